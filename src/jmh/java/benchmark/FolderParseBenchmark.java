@@ -0,0 +1,63 @@
+/*
+ * Description: Parsing the names of the plot files found inside a folder
+ * License: Apache-2.0
+ */
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import plotter.Plotter;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FolderParseBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int files;
+
+    private File folder;
+    private final Plotter plotter = new Plotter(SyntheticPlot.NUMERIC_ID);
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        folder = SyntheticPlot.createFolder("");
+        long start = 0;
+        for (int i = 0; i < files; i++) {
+            // empty files are enough, only the names are read
+            new File(folder, SyntheticPlot.NUMERIC_ID + "_" + start + "_" + 38144).createNewFile();
+            start += 38144;
+        }
+        // files from other accounts are filtered out
+        new File(folder, "1234567890_0_1000").createNewFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticPlot.deleteFolder(folder);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long nonceHighestInsideFolder() {
+        return plotter.getNonceHighestInsideFolder(0, folder);
+    }
+}
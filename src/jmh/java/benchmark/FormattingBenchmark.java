@@ -0,0 +1,95 @@
+/*
+ * Description: Formatting of amounts and disk sizes
+ * License: Apache-2.0
+ */
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import plotter.Plotter;
+import utils.NumberFormatting;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FormattingBenchmark {
+
+    private final Plotter plotter = new Plotter(SyntheticPlot.NUMERIC_ID);
+    private long valueNQT = 123456789012345L;
+    private double bytes = 12.5 * NumberFormatting.ONE_GIB * 1024;
+    private long longBytes = 25L * NumberFormatting.ONE_GIB * 512;
+    private final StringBuilder out = new StringBuilder(NumberFormatting.MAX_LENGTH);
+    private final char[] buffer = new char[NumberFormatting.MAX_LENGTH];
+
+    @Benchmark
+    @Threads(1)
+    public String formatSigna() {
+        return NumberFormatting.SIGNA.format(valueNQT++);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String formatFull() {
+        return NumberFormatting.FULL.format(valueNQT++);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public StringBuilder formatSignaTo() {
+        out.setLength(0);
+        return NumberFormatting.SIGNA.formatTo(valueNQT++, out);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int formatFullToChars() {
+        return NumberFormatting.FULL.formatTo(valueNQT++, buffer, 0);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public StringBuilder formatSignaToShared() {
+        // the presets are shared by all the threads
+        out.setLength(0);
+        return NumberFormatting.SIGNA.formatTo(valueNQT++, out);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long parseNQT() {
+        return NumberFormatting.parseNQT("1,234,567.89012345");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String formatDouble() {
+        bytes += 1;
+        return NumberFormatting.SIGNA_2.format(bytes);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String formatSpace() {
+        bytes += 1;
+        return plotter.formatSpace(bytes);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public StringBuilder formatSpaceTo() {
+        out.setLength(0);
+        return plotter.formatSpace(longBytes++, out);
+    }
+}
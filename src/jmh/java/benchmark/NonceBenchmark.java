@@ -0,0 +1,69 @@
+/*
+ * Description: Cost of generating nonces, the core of the plotting process
+ * License: Apache-2.0
+ */
+package benchmark;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import plotter.Plotter;
+import signumj.crypto.SignumCrypto;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class NonceBenchmark {
+
+    private final long accountId = Long.parseUnsignedLong(SyntheticPlot.NUMERIC_ID);
+    private final Plotter plotter = new Plotter(SyntheticPlot.NUMERIC_ID);
+    private final File folder = new File(System.getProperty("java.io.tmpdir"));
+    private SignumCrypto crypto;
+    private byte[] generationSignature;
+    private long nonce;
+
+    @Setup
+    public void setup() {
+        crypto = SignumCrypto.getInstance();
+        generationSignature = new byte[32];
+        new Random(42).nextBytes(generationSignature);
+    }
+
+    /**
+     * Computes a full PoC2 nonce (8192 Shabal256 rounds) and takes the hit of
+     * one scoop, this is the work the plotter repeats for every nonce.
+     * @return the hit, so that the JIT can not remove the work
+     */
+    @Benchmark
+    @Threads(1)
+    public BigInteger generateNonce() {
+        return crypto.calculateHit(accountId, nonce++, generationSignature, 0, 2);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public BigInteger generateNonceFourThreads() {
+        return crypto.calculateHit(accountId, nonce++, generationSignature, 0, 2);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long startNonce() {
+        return plotter.getNonceInitial(folder);
+    }
+}
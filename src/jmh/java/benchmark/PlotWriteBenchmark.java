@@ -0,0 +1,74 @@
+/*
+ * Description: Write throughput of plot files on a given disk
+ * License: Apache-2.0
+ */
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes complete plot files. Use "-p folder=/dev/shm" to measure tmpfs or
+ * point it to a mounted disk to measure the disk itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class PlotWriteBenchmark {
+
+    // empty means the default temporary folder
+    @Param({""})
+    public String folder;
+
+    // 64 nonces are 16 MiB, 1024 nonces are 256 MiB
+    @Param({"64", "1024"})
+    public long nonces;
+
+    private File target;
+    private long startNonce;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        target = SyntheticPlot.createFolder(folder);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clean() {
+        File[] files = target.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticPlot.deleteFolder(target);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public File writePlot() throws IOException {
+        startNonce += nonces;
+        return SyntheticPlot.create(target, startNonce, nonces);
+    }
+}
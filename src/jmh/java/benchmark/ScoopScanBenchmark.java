@@ -0,0 +1,115 @@
+/*
+ * Description: Reading scoops and searching deadlines inside plot files
+ * License: Apache-2.0
+ */
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import signumj.crypto.SignumCrypto;
+
+/**
+ * Reads one scoop region per round from a synthetic plot file, the same
+ * access pattern that a miner does on every new block. Once the file is on
+ * the page cache this measures memory and hashing speed, use a file bigger
+ * than the RAM or drop the caches to measure the disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ScoopScanBenchmark {
+
+    @Param({""})
+    public String folder;
+
+    @Param({"256", "1024"})
+    public long nonces;
+
+    private static final long BASE_TARGET = 18325193796L;
+
+    private File target;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private ByteBuffer scoopRegion;
+    private final byte[] scoop = new byte[SyntheticPlot.SCOOP_SIZE];
+    private final byte[] generationSignature = new byte[32];
+    private MessageDigest shabal;
+    private final Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        target = SyntheticPlot.createFolder(folder);
+        File plot = SyntheticPlot.create(target, 0, nonces);
+        raf = new RandomAccessFile(plot, "r");
+        channel = raf.getChannel();
+        scoopRegion = ByteBuffer.allocateDirect((int) (nonces * SyntheticPlot.SCOOP_SIZE));
+        shabal = SignumCrypto.getInstance().getShabal256();
+        random.nextBytes(generationSignature);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        raf.close();
+        SyntheticPlot.deleteFolder(target);
+    }
+
+    private void readScoopRegion(int scoopNumber) throws IOException {
+        scoopRegion.clear();
+        long position = scoopNumber * nonces * SyntheticPlot.SCOOP_SIZE;
+        while (scoopRegion.hasRemaining()) {
+            int read = channel.read(scoopRegion, position);
+            if (read < 0) {
+                throw new IOException("Plot file is shorter than expected");
+            }
+            position += read;
+        }
+        scoopRegion.flip();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ByteBuffer readScoop() throws IOException {
+        readScoopRegion(random.nextInt(SyntheticPlot.SCOOPS_PER_NONCE));
+        return scoopRegion;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long scanDeadlines() throws IOException {
+        readScoopRegion(random.nextInt(SyntheticPlot.SCOOPS_PER_NONCE));
+        long best = Long.MAX_VALUE;
+        for (long nonce = 0; nonce < nonces; nonce++) {
+            scoopRegion.get(scoop);
+            shabal.update(generationSignature);
+            shabal.update(scoop);
+            long hit = ByteBuffer.wrap(shabal.digest(), 0, 8)
+                    .order(ByteOrder.LITTLE_ENDIAN).getLong();
+            best = Math.min(best, Long.divideUnsigned(hit, BASE_TARGET));
+        }
+        return best;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Description: Throughput of the Shabal256 hash used for plotting and mining
+ * License: Apache-2.0
+ */
+package benchmark;
+
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import signumj.crypto.SignumCrypto;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ShabalBenchmark {
+
+    // 96 bytes is what mining hashes: generation signature plus one scoop
+    @Param({"96", "4096"})
+    public int inputSize;
+
+    private MessageDigest shabal;
+    private byte[] input;
+
+    @Setup
+    public void setup() {
+        shabal = SignumCrypto.getInstance().getShabal256();
+        input = new byte[inputSize];
+        new Random(42).nextBytes(input);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] hash() {
+        shabal.update(input);
+        return shabal.digest();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] hashFourThreads() {
+        shabal.update(input);
+        return shabal.digest();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Description: Creates plot files with random content for the benchmarks
+ * License: Apache-2.0
+ */
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+public class SyntheticPlot {
+
+    public static final String NUMERIC_ID = "5505480724951664437";
+    public static final int SCOOPS_PER_NONCE = 4096;
+    public static final int SCOOP_SIZE = 64;
+    public static final long BYTES_OF_A_NONCE = 262144L;
+
+    /**
+     * Writes a plot file using the PoC2 layout, one scoop region after the
+     * other. The content is random, we only care about the I/O pattern.
+     * The file is forced to the disk before returning, otherwise only the
+     * page cache would be measured.
+     * @param folder where the file is created
+     * @param startNonce first nonce, only used for the file name
+     * @param nonces number of nonces inside the file
+     * @return the file that was written
+     * @throws IOException when the disk refuses the write
+     */
+    public static File create(File folder, long startNonce, long nonces) throws IOException {
+        File plot = new File(folder, NUMERIC_ID + "_" + startNonce + "_" + nonces);
+        ByteBuffer scoopRegion = ByteBuffer.allocateDirect((int) (nonces * SCOOP_SIZE));
+        byte[] random = new byte[scoopRegion.capacity()];
+        new Random(startNonce).nextBytes(random);
+        scoopRegion.put(random);
+        try (RandomAccessFile raf = new RandomAccessFile(plot, "rw");
+                FileChannel channel = raf.getChannel()) {
+            raf.setLength(nonces * BYTES_OF_A_NONCE);
+            for (int scoop = 0; scoop < SCOOPS_PER_NONCE; scoop++) {
+                scoopRegion.clear();
+                long position = scoop * nonces * SCOOP_SIZE;
+                while (scoopRegion.hasRemaining()) {
+                    position += channel.write(scoopRegion, position);
+                }
+            }
+            channel.force(true);
+        }
+        return plot;
+    }
+
+    /**
+     * Creates a temporary folder inside the given parent, or inside the
+     * default temporary folder when no parent was given.
+     * @param parent empty for the default temporary folder
+     * @return a new empty folder
+     * @throws IOException when the folder could not be created
+     */
+    public static File createFolder(String parent) throws IOException {
+        File base = new File(parent == null || parent.isEmpty()
+                ? System.getProperty("java.io.tmpdir") : parent);
+        File folder = new File(base, "signum-bench-" + System.nanoTime());
+        if (!folder.mkdirs()) {
+            throw new IOException("Failed to create " + folder.getAbsolutePath());
+        }
+        return folder;
+    }
+
+    /**
+     * Removes a folder created for the benchmarks together with its files.
+     * @param folder the folder to remove
+     */
+    public static void deleteFolder(File folder) {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        folder.delete();
+    }
+}
@@ -6,6 +6,7 @@ package core;
 
 import java.io.File;
 import org.apache.log4j.PropertyConfigurator;
+import metrics.Metrics;
 import miner.Miner;
 
 /**
@@ -21,6 +22,8 @@ public class Actions {
     public Actions() {
         // read the config for the log4j class
         PropertyConfigurator.configure(getClass().getResourceAsStream("/log4j.properties"));
+        // make the plotter and miner metrics visible on JMX
+        Metrics.registerMBean();
         // get the miner started
         miner = new Miner();
         // add the path to the plots
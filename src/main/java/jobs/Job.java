@@ -0,0 +1,21 @@
+/*
+ * Description: A unit of work executed by the job executor
+ * License: Apache-2.0
+ */
+package jobs;
+
+/**
+ * @param <T> the result of the job
+ */
+@FunctionalInterface
+public interface Job<T> {
+
+    /**
+     * Does the work. Long jobs should check the context regularly and
+     * return as soon as it was cancelled.
+     * @param context progress and cancellation of this job
+     * @return the result given to the handle
+     * @throws Exception any failure completes the handle exceptionally
+     */
+    T run(JobContext context) throws Exception;
+}
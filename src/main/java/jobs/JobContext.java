@@ -0,0 +1,39 @@
+/*
+ * Description: What a running job can see of its own handle
+ * License: Apache-2.0
+ */
+package jobs;
+
+import java.util.concurrent.CancellationException;
+
+public interface JobContext {
+
+    /**
+     * @return true after someone asked this job to stop
+     */
+    boolean isCancelled();
+
+    /**
+     * Stops the job when it was cancelled
+     * @throws CancellationException after someone asked this job to stop
+     */
+    default void checkCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Publishes the progress of the job
+     * @param done amount of work finished
+     * @param total amount of work in total
+     */
+    void setProgress(long done, long total);
+
+    /**
+     * Runs an action when the job is cancelled, for example to stop an
+     * external process. Runs right away when it was already cancelled.
+     * @param action called from the thread that cancels the job
+     */
+    void onCancel(Runnable action);
+}
@@ -0,0 +1,168 @@
+/*
+ * Description: Runs the plotting, mining, moving and verification jobs
+ * License: Apache-2.0
+ */
+package jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import utils.CPUcalculator;
+
+/**
+ * Plotting and mining jobs run each on its own platform thread that is not
+ * a daemon, so the JVM keeps running while they do. Other jobs that wait
+ * (for disks) run on virtual threads when the Java version has them, on a
+ * pool of platform threads otherwise. Calculations run on a pool as big as
+ * the number of cores. Both are bounded, jobs over the limit wait in the
+ * queue.
+ */
+public class JobExecutor {
+
+    private static JobExecutor defaultExecutor;
+
+    private final ExecutorService waitingPool;
+    private final Semaphore waitingSlots;
+    private final ThreadPoolExecutor computePool;
+    private final Set<JobHandle<?>> running = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger processThreads = new AtomicInteger();
+
+    /**
+     * @param maxWaitingJobs how many waiting jobs may run at the same time
+     */
+    public JobExecutor(int maxWaitingJobs) {
+        ExecutorService virtual = newVirtualThreadExecutor();
+        if (virtual != null) {
+            waitingPool = virtual;
+            waitingSlots = new Semaphore(maxWaitingJobs);
+        } else {
+            waitingPool = newPool("signum-io", maxWaitingJobs);
+            waitingSlots = null;
+        }
+        computePool = newPool("signum-compute", CPUcalculator.getNumberOfCores());
+    }
+
+    /**
+     * The executor shared by the plotter and the miner
+     * @return the same instance on every call
+     */
+    public static synchronized JobExecutor getDefault() {
+        if (defaultExecutor == null) {
+            defaultExecutor = new JobExecutor(64);
+        }
+        return defaultExecutor;
+    }
+
+    private static ThreadPoolExecutor newPool(String prefix, int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), factory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Virtual threads exist from Java 21 on, we still compile for Java 8
+     * @return null when not available
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Submits a new job
+     * @param <T> the result of the job
+     * @param name shown on logs, like the name of the file
+     * @param type decides where the job runs
+     * @param job the work itself
+     * @return the handle to follow, await and cancel the job
+     */
+    public <T> JobHandle<T> submit(String name, JobType type, Job<T> job) {
+        JobHandle<T> handle = new JobHandle<>(name, type);
+        running.add(handle);
+        handle.getFuture().whenComplete((result, ex) -> running.remove(handle));
+        Runnable task = () -> handle.run(job);
+        try {
+            if (type.isProcess()) {
+                Thread thread = new Thread(task, "signum-" + type.name().toLowerCase()
+                        + "-" + processThreads.incrementAndGet());
+                thread.start();
+            } else if (!type.isWaiting()) {
+                computePool.execute(task);
+            } else if (waitingSlots == null) {
+                waitingPool.execute(task);
+            } else {
+                waitingPool.execute(() -> {
+                    try {
+                        waitingSlots.acquire();
+                    } catch (InterruptedException ex) {
+                        handle.abort(null);
+                        return;
+                    }
+                    try {
+                        task.run();
+                    } finally {
+                        waitingSlots.release();
+                    }
+                });
+            }
+        } catch (RejectedExecutionException ex) {
+            handle.abort(ex);
+        }
+        return handle;
+    }
+
+    /**
+     * @return the jobs that did not finish yet
+     */
+    public List<JobHandle<?>> getJobs() {
+        return new ArrayList<>(running);
+    }
+
+    /**
+     * Cancels every job and waits for them to finish
+     * @param timeoutMillis how long to wait
+     * @return true when all jobs finished in time
+     * @throws InterruptedException when the thread is interrupted
+     */
+    public boolean shutdown(long timeoutMillis) throws InterruptedException {
+        List<JobHandle<?>> jobs = getJobs();
+        for (JobHandle<?> handle : jobs) {
+            handle.cancel();
+        }
+        waitingPool.shutdown();
+        computePool.shutdown();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        boolean finished = waitingPool.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)
+                && computePool.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS);
+        for (JobHandle<?> handle : jobs) {
+            // the future of a job may be cancelled before the job returns
+            if (handle.getType().isProcess() && !handle.awaitStopped(
+                    Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                finished = false;
+            }
+        }
+        return finished;
+    }
+}
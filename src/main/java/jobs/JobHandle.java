@@ -0,0 +1,184 @@
+/*
+ * Description: Follows and controls a job that was submitted
+ * License: Apache-2.0
+ */
+package jobs;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @param <T> the result of the job
+ */
+public class JobHandle<T> implements JobContext {
+
+    private final String name;
+    private final JobType type;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    private final List<Runnable> cancelActions = new CopyOnWriteArrayList<>();
+    private final AtomicLong done = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    // the job returned, nothing is left to stop
+    private volatile boolean finished;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    // the thread running the job, guarded by the lock so that an interrupt
+    // never reaches the thread after the job gave it back
+    private final Object threadLock = new Object();
+    private Thread thread;
+
+    JobHandle(String name, JobType type) {
+        this.name = name;
+        this.type = type;
+        // future.cancel() stops the job like cancel() does
+        future.whenComplete((result, ex) -> {
+            if (future.isCancelled()) {
+                cancel();
+            }
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public JobType getType() {
+        return type;
+    }
+
+    /**
+     * @return completes with the result of the job, exceptionally when the
+     * job failed or was cancelled. Cancelling it cancels the job.
+     */
+    public CompletableFuture<T> getFuture() {
+        return future;
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     * Waits until the job returned. A cancelled future completes at once,
+     * the job may still be stopping then.
+     * @throws InterruptedException when the thread is interrupted
+     */
+    public void awaitStopped() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Waits until the job returned
+     * @param timeout how long to wait
+     * @param unit unit of the timeout
+     * @return false when the job was still running after the timeout
+     * @throws InterruptedException when the thread is interrupted
+     */
+    public boolean awaitStopped(long timeout, TimeUnit unit) throws InterruptedException {
+        return stopped.await(timeout, unit);
+    }
+
+    /**
+     * Progress between 0 and 1
+     * @return zero when the job did not report any progress yet
+     */
+    public double getProgress() {
+        long t = total.get();
+        return t <= 0 ? (isDone() ? 1 : 0) : Math.min(1, (double) done.get() / t);
+    }
+
+    /**
+     * Asks the job to stop. The job finishes its current step, runs the
+     * cancel actions and the future completes as cancelled.
+     */
+    public void cancel() {
+        // the future may already be cancelled while the job still runs
+        if (finished || !cancelled.compareAndSet(false, true)) {
+            return;
+        }
+        for (Runnable action : cancelActions) {
+            action.run();
+        }
+        synchronized (threadLock) {
+            if (thread != null) {
+                // wakes up sleeps and waits
+                thread.interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    @Override
+    public void setProgress(long done, long total) {
+        this.total.set(total);
+        this.done.set(done);
+    }
+
+    @Override
+    public void onCancel(Runnable action) {
+        cancelActions.add(action);
+        if (cancelled.get()) {
+            action.run();
+        }
+    }
+
+    void run(Job<T> job) {
+        if (cancelled.get()) {
+            abort(null);
+            return;
+        }
+        synchronized (threadLock) {
+            thread = Thread.currentThread();
+        }
+        try {
+            T result = job.run(this);
+            if (cancelled.get()) {
+                future.cancel(false);
+            } else {
+                future.complete(result);
+            }
+        } catch (Throwable ex) {
+            if (cancelled.get()) {
+                future.cancel(false);
+            } else {
+                future.completeExceptionally(ex);
+            }
+        } finally {
+            finished = true;
+            synchronized (threadLock) {
+                thread = null;
+                // do not leave the interrupt to the next job of this thread
+                Thread.interrupted();
+            }
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Ends a job that will never run
+     * @param ex why it could not run, null when it was cancelled
+     */
+    void abort(Throwable ex) {
+        finished = true;
+        stopped.countDown();
+        if (ex == null) {
+            future.cancel(false);
+        } else {
+            future.completeExceptionally(ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + name;
+    }
+}
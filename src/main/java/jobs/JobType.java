@@ -0,0 +1,36 @@
+/*
+ * Description: The kinds of jobs that the library runs
+ * License: Apache-2.0
+ */
+package jobs;
+
+public enum JobType {
+    // waits for the external plotter
+    PLOT,
+    // waits for the external miner
+    MINE,
+    // copies plots between disks
+    MOVE,
+    // reads plots to check them
+    VERIFY,
+    // joins small plots into bigger ones
+    MERGE,
+    // calculations done in Java
+    COMPUTE;
+
+    /**
+     * @return true when the job spends most of its time waiting for disks
+     * or other processes
+     */
+    public boolean isWaiting() {
+        return this != COMPUTE;
+    }
+
+    /**
+     * @return true when the job drives an external process for as long as
+     * the application runs, so it needs a thread that keeps the JVM alive
+     */
+    public boolean isProcess() {
+        return this == PLOT || this == MINE;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Description: Registry of the counters, gauges and timers of the library
+ * License: Apache-2.0
+ */
+package metrics;
+
+import static core.Global.logger;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * All values are kept in lock-free structures, so that updating them from
+ * the plotting and mining loops costs almost nothing. Readers (JMX or the
+ * Prometheus exporter) take a snapshot whenever they need one.
+ *
+ * Metric names follow the Prometheus conventions. A metric can carry one
+ * label, for example the disk, in which case the name becomes
+ * plotter_bytes_written_total{disk="/mnt/disk1"}.
+ */
+public class Metrics {
+
+    public static final String OBJECT_NAME = "signum:type=Metrics";
+
+    private static final ConcurrentHashMap<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, AtomicLong> GAUGES = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Timer> TIMERS = new ConcurrentHashMap<>();
+
+    /**
+     * Gets a counter, it is created on the first call. Keep the returned
+     * object in a field when the counter is used inside a loop.
+     * @param name the metric name, should end with _total
+     * @return the counter to increment
+     */
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    public static LongAdder counter(String name, String label, String value) {
+        return counter(key(name, label, value));
+    }
+
+    /**
+     * Gets a gauge, a value that can go up and down (queue sizes, speeds)
+     * @param name the metric name
+     * @return the gauge to set
+     */
+    public static AtomicLong gauge(String name) {
+        return GAUGES.computeIfAbsent(name, key -> new AtomicLong());
+    }
+
+    public static AtomicLong gauge(String name, String label, String value) {
+        return gauge(key(name, label, value));
+    }
+
+    /**
+     * Gets a timer for measuring durations
+     * @param name the metric name, without unit
+     * @return the timer to record durations
+     */
+    public static Timer timer(String name) {
+        return TIMERS.computeIfAbsent(name, key -> new Timer());
+    }
+
+    public static Timer timer(String name, String label, String value) {
+        return timer(key(name, label, value));
+    }
+
+    /**
+     * Creates the name of a metric with one label
+     * @param name the metric name
+     * @param label name of the label, like "disk"
+     * @param value value of the label, quotes and backslashes are escaped
+     * @return the name with the label in the Prometheus format
+     */
+    public static String key(String name, String label, String value) {
+        String escaped = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        return name + "{" + label + "=\"" + escaped + "\"}";
+    }
+
+    /**
+     * Adds a suffix to a metric name, before the label when there is one
+     * @param key the name of the metric, possibly with a label
+     * @param suffix like "_count"
+     * @return the new name
+     */
+    public static String withSuffix(String key, String suffix) {
+        int labelStart = key.indexOf('{');
+        if (labelStart < 0) {
+            return key + suffix;
+        }
+        return key.substring(0, labelStart) + suffix + key.substring(labelStart);
+    }
+
+    /**
+     * Removes the label from a metric name
+     * @param key the name of the metric, possibly with a label
+     * @return only the name
+     */
+    public static String family(String key) {
+        int labelStart = key.indexOf('{');
+        return labelStart < 0 ? key : key.substring(0, labelStart);
+    }
+
+    public static SortedMap<String, Long> getCounters() {
+        TreeMap<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : COUNTERS.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    public static SortedMap<String, Long> getGauges() {
+        TreeMap<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : GAUGES.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    public static SortedMap<String, Timer> getTimers() {
+        return new TreeMap<>(TIMERS);
+    }
+
+    /**
+     * Flat view of every value, timers are split into count, sum, last and
+     * max (in milliseconds).
+     * @return metric name and its current value
+     */
+    public static SortedMap<String, Long> snapshot() {
+        TreeMap<String, Long> result = new TreeMap<>();
+        result.putAll(getCounters());
+        result.putAll(getGauges());
+        for (Map.Entry<String, Timer> entry : TIMERS.entrySet()) {
+            String key = entry.getKey();
+            Timer timer = entry.getValue();
+            result.put(withSuffix(key, "_count"), timer.getCount());
+            result.put(withSuffix(key, "_sum_ms"), timer.getTotalNanos() / 1000000L);
+            result.put(withSuffix(key, "_last_ms"), timer.getLastNanos() / 1000000L);
+            result.put(withSuffix(key, "_max_ms"), timer.getMaxNanos() / 1000000L);
+        }
+        return result;
+    }
+
+    /**
+     * Makes the metrics visible on JMX (jconsole, VisualVM, exporters),
+     * calling it more than once has no effect.
+     * @return false when the registration failed
+     */
+    public static synchronized boolean registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsMBean(), name);
+            }
+            return true;
+        } catch (JMException ex) {
+            logger.error("Failed to register the metrics on JMX: " + ex.getMessage());
+            return false;
+        }
+    }
+}
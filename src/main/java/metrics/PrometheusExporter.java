@@ -0,0 +1,110 @@
+/*
+ * Description: Writes the metrics in the Prometheus text format
+ * License: Apache-2.0
+ */
+package metrics;
+
+import static core.Global.logger;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Optional exporter, nothing is started unless start() is called.
+ */
+public class PrometheusExporter {
+
+    private HttpServer server;
+
+    /**
+     * Writes all the metrics of the registry. Prometheus wants all the
+     * samples of a family after a single TYPE line, so they are grouped by
+     * family first (sorting by the full name would split a family).
+     * @param out where the text is written
+     * @throws IOException when the output refuses the text
+     */
+    public static void write(Appendable out) throws IOException {
+        TreeMap<String, Family> families = new TreeMap<>();
+        for (Map.Entry<String, Long> entry : Metrics.getCounters().entrySet()) {
+            family(families, entry.getKey(), "counter").add(entry.getKey(), Long.toString(entry.getValue()));
+        }
+        for (Map.Entry<String, Long> entry : Metrics.getGauges().entrySet()) {
+            family(families, entry.getKey(), "gauge").add(entry.getKey(), Long.toString(entry.getValue()));
+        }
+        for (Map.Entry<String, Timer> entry : Metrics.getTimers().entrySet()) {
+            String key = entry.getKey();
+            Timer timer = entry.getValue();
+            family(families, Metrics.withSuffix(key, "_seconds"), "summary")
+                    .add(Metrics.withSuffix(key, "_seconds_sum"), seconds(timer.getTotalNanos()))
+                    .add(Metrics.withSuffix(key, "_seconds_count"), Long.toString(timer.getCount()));
+            String last = Metrics.withSuffix(key, "_last_seconds");
+            family(families, last, "gauge").add(last, seconds(timer.getLastNanos()));
+            String max = Metrics.withSuffix(key, "_max_seconds");
+            family(families, max, "gauge").add(max, seconds(timer.getMaxNanos()));
+        }
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            out.append("# TYPE ").append(entry.getKey()).append(' ').append(entry.getValue().type).append('\n');
+            out.append(entry.getValue().samples);
+        }
+    }
+
+    private static Family family(Map<String, Family> families, String key, String type) {
+        return families.computeIfAbsent(Metrics.family(key), name -> new Family(type));
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    private static final class Family {
+
+        private final String type;
+        private final StringBuilder samples = new StringBuilder();
+
+        private Family(String type) {
+            this.type = type;
+        }
+
+        private Family add(String key, String value) {
+            samples.append(key).append(' ').append(value).append('\n');
+            return this;
+        }
+    }
+
+    /**
+     * Serves the metrics on http://host:port/metrics
+     * @param port where to listen, use 0 for a random port
+     * @return the port that is being used
+     * @throws IOException when the port is not available
+     */
+    public synchronized int start(int port) throws IOException {
+        if (server != null) {
+            return server.getAddress().getPort();
+        }
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", exchange -> {
+            StringBuilder text = new StringBuilder();
+            write(text);
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        logger.info("Prometheus metrics available on port " + server.getAddress().getPort());
+        return server.getAddress().getPort();
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+}
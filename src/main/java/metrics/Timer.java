@@ -0,0 +1,57 @@
+/*
+ * Description: Lock-free record of how long an operation takes
+ * License: Apache-2.0
+ */
+package metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the number of measurements, their sum, the last and the highest
+ * value. The last value is what shows a drift, the sum and count give the
+ * average between two readings.
+ */
+public class Timer {
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong lastNanos = new AtomicLong();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Adds a new measurement
+     * @param nanos duration in nanoseconds, negative values are ignored
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        count.increment();
+        totalNanos.add(nanos);
+        lastNanos.set(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public void recordMillis(long millis) {
+        record(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getLastNanos() {
+        return lastNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+}
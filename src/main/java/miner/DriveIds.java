@@ -0,0 +1,84 @@
+/*
+ * Description: Finds the name that the miner gives to the drive of a plot folder
+ * License: Apache-2.0
+ */
+package miner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import utils.OSValidator;
+
+/**
+ * With show_drive_stats the miner prints one line per drive when it is
+ * read, "drive 803 finished, speed=120 MiB/s". The miner groups the plot
+ * folders by drive: on Linux the drive is the device number given by
+ * "stat -c %D" (in hex), on Windows the volume path, like "D:\". The same
+ * names are computed here, so that a drive line can be matched with the
+ * plot folders on it.
+ */
+public final class DriveIds {
+
+    private static final Map<String, String> ID_OF_FOLDER = new ConcurrentHashMap<>();
+
+    private DriveIds() {
+    }
+
+    /**
+     * @param folder a plot folder
+     * @return the drive as named by the miner, the folder path when unknown
+     */
+    public static String of(File folder) {
+        return ID_OF_FOLDER.computeIfAbsent(folder.getAbsolutePath(), key -> resolve(folder));
+    }
+
+    private static String resolve(File folder) {
+        Path path = folder.getAbsoluteFile().toPath();
+        // the folder may not exist yet, use the closest one that does
+        while (path != null && !Files.exists(path)) {
+            path = path.getParent();
+        }
+        if (path == null) {
+            return folder.getAbsolutePath();
+        }
+        if (OSValidator.IS_WINDOWS) {
+            return path.getRoot().toString();
+        }
+        try {
+            Object device = Files.getAttribute(path, "unix:dev");
+            return Long.toHexString((Long) device);
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException ex) {
+            return folder.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Is the folder on the drive printed by the miner?
+     * @param drive the drive as printed by the miner
+     * @param folder a plot folder
+     * @return true for the device number of the folder, or for a volume
+     * path that contains the folder
+     */
+    public static boolean matches(String drive, File folder) {
+        String id = drive.trim();
+        if (id.isEmpty()) {
+            return false;
+        }
+        if (id.equalsIgnoreCase(of(folder))) {
+            return true;
+        }
+        if (id.indexOf('/') < 0 && id.indexOf('\\') < 0) {
+            return false;
+        }
+        // on path boundaries, /mnt/d10 is not on /mnt/d1
+        try {
+            return folder.getAbsoluteFile().toPath().startsWith(Paths.get(id));
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+}
@@ -21,11 +21,23 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import jobs.JobContext;
+import jobs.JobExecutor;
+import jobs.JobHandle;
+import jobs.JobType;
+import metrics.Metrics;
 import org.apache.commons.io.IOUtils;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import signumj.entity.SignumAddress;
 import core.Actions;
+import utils.CPUgovernor;
+import utils.IOarbiter;
 import utils.OSValidator;
 
 /**
@@ -50,20 +62,51 @@ public class Miner {
 
     private final Logger logger= LogManager.getLogger(Actions.class);
     private File minerFile;
+    private File minerExecutable;
     private final ArrayList<File> pathList = new ArrayList<>();
 
-    private boolean mining;
-    private Process minerProcess;
+    private final AtomicBoolean mining = new AtomicBoolean();
+    private volatile Process minerProcess;
+    private volatile JobHandle<Void> mineJob;
     private static final String TMP_DIR = System.getProperty("java.io.tmpdir");
     private static final String MINER_CONFIG_FILE = "btdex-miner.yaml";
     private final HashMap<String, String> poolMaxDeadlines = new HashMap<>();
     private static final OkHttpClient CLIENT = new OkHttpClient();
     private final LinkedHashMap<String, SignumAddress> poolAddresses = new LinkedHashMap<>();
+    private MinerLog minerLog;
+    private final List<RoundListener> roundListeners = new CopyOnWriteArrayList<>();
+    private IOarbiter arbiter;
+    private ScanPlanner planner;
+    private volatile long blockPollMillis = 1000;
+    // requests to the pool, kept away from the thread reading the miner output
+    private final ExecutorService poolRequests = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "miner-pool");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public Miner() {
         // update the information we have about our pools
         updatePoolInfo(poolList);
     }
+
+    /**
+     * Miner that only knows the given pools, set Miner.pool to choose one
+     * @param urlList the pools to ask for their configuration
+     */
+    public Miner(String... urlList) {
+        poolList = urlList;
+        updatePoolInfo(poolList);
+    }
+
+    /**
+     * Use a miner installed on the system instead of the one included in
+     * the library, for systems where none is included
+     * @param minerExecutable the signum-miner executable
+     */
+    public void setMinerExecutable(File minerExecutable) {
+        this.minerExecutable = minerExecutable;
+    }
     
     /**
      * Update the list of pools that are supported
@@ -74,9 +117,11 @@ public class Miner {
         for (String poolURL : urlList) {
             String poolURLgetConfig = poolURL + "/api/getConfig";
             try {
+                long started = System.nanoTime();
                 Request request = new Request.Builder().url(poolURLgetConfig).build();
                 Response responses = CLIENT.newCall(request).execute();
                 String jsonData = responses.body().string();
+                Metrics.timer("miner_pool_rtt", "pool", poolURL).record(System.nanoTime() - started);
                 JsonObject json = JsonParser.parseString(jsonData).getAsJsonObject();
 
                 SignumAddress poolAddress = SignumAddress.fromEither(json.get("poolAccount").getAsString());
@@ -94,14 +139,17 @@ public class Miner {
         }
     }
 
+    /**
+     * Starts the miner with the folders that were added
+     * @return the mining job, null when the miner could not be started
+     */
     @SuppressWarnings("CallToPrintStackTrace")
-    public void startMining() {
-        if (mining) {
-            return;
+    public JobHandle<Void> startMining() {
+        if (!mining.compareAndSet(false, true)) {
+            return mineJob;
         }
 
         logger.info("Started mining");
-        mining = true;
 
         String minerName = "signum-miner";
         if (OSValidator.IS_WINDOWS) {
@@ -110,49 +158,156 @@ public class Miner {
             minerName += ".app";
         }
 
-        minerFile = new File(TMP_DIR, minerName);
+        minerFile = minerExecutable != null ? minerExecutable : new File(TMP_DIR, minerName);
 
         InputStream minerStream = getClass().getResourceAsStream("/miner/" + minerName);
-        InputStream minerConfigStream = (getClass().getResourceAsStream("/miner/config.yaml"));
+        if (minerExecutable == null && minerStream == null) {
+            logger.error("No miner available for this system: " + minerName);
+            mining.set(false);
+            return null;
+        }
         try {
-            if (minerFile.exists() && minerFile.isFile()) {
-                minerFile.delete();
+            if (minerExecutable == null) {
+                if (minerFile.exists() && minerFile.isFile()) {
+                    minerFile.delete();
+                }
+
+                logger.info("Copying miner to: " + minerFile.getAbsolutePath());
+                Files.copy(minerStream, minerFile.getAbsoluteFile().toPath());
+                if (!OSValidator.IS_WINDOWS) {
+                    minerFile.setExecutable(true);
+                }
             }
 
-            logger.info("Copying miner to: " + minerFile.getAbsolutePath());
-            Files.copy(minerStream, minerFile.getAbsoluteFile().toPath());
-            if (!OSValidator.IS_WINDOWS) {
-                minerFile.setExecutable(true);
+            String poolDeadline = poolMaxDeadlines.get(pool);
+            minerLog = new MinerLog(poolDeadline == null ? Long.MAX_VALUE : Long.parseLong(poolDeadline));
+            for (RoundListener listener : roundListeners) {
+                minerLog.addListener(listener);
             }
+            writeMinerConfig();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            //Toast.makeText((JFrame) SwingUtilities.getWindowAncestor(this), ex.getMessage(), Toast.Style.ERROR).display();
+            mining.set(false);
+            return null;
+        }
+        mineJob = JobExecutor.getDefault().submit("mining", JobType.MINE, context -> {
+            context.onCancel(this::stopProcess);
+            mine(context);
+            return null;
+        });
+        return mineJob;
+    }
 
-            File minerConfigFile = new File(minerFile.getParent(), MINER_CONFIG_FILE);
-            FileWriter minerConfig = new FileWriter(minerConfigFile);
+    /**
+     * Writes the miner configuration, with the plot folders in the order
+     * given by the planner, which learns the disk speeds while mining
+     */
+    private void writeMinerConfig() throws IOException {
+        File minerConfigFile = new File(TMP_DIR, MINER_CONFIG_FILE);
+        List<File> plotDirs = new ArrayList<>();
+        for (File path : pathList) {
+            if (path != null) {
+                plotDirs.add(path);
+            }
+        }
+        if (planner != null) {
+            plotDirs = planner.order(plotDirs);
+        }
+        minerLog.setFolders(plotDirs);
+        try (FileWriter minerConfig = new FileWriter(minerConfigFile);
+                InputStream minerConfigStream = getClass().getResourceAsStream("/miner/config.yaml")) {
             minerConfig.append("plot_dirs:\n");
-            for (File path : pathList) {
-                if (path == null) {
-                    continue;
-                }
+            for (File path : plotDirs) {
                 minerConfig.append(" - '" + path.getAbsolutePath() + "'\n");
             }
             minerConfig.append("url: '" + pool + "'\n");
-
-            String poolDeadline = poolMaxDeadlines.get(pool);
-            minerConfig.append("target_deadline: " + poolDeadline + "\n");
+            minerConfig.append("target_deadline: " + poolMaxDeadlines.get(pool) + "\n");
 
             minerConfig.append("cpu_threads: " + (cpusToMine) + "\n");
             minerConfig.append("cpu_worker_task_count: " + (cpusToMine) + "\n");
 
             logger.info("Copying miner config to: " + minerConfigFile.getAbsolutePath());
             IOUtils.copy(minerConfigStream, minerConfig);
-            minerConfig.close();
-        } catch (IOException ex) {
-            ex.printStackTrace();
-            //Toast.makeText((JFrame) SwingUtilities.getWindowAncestor(this), ex.getMessage(), Toast.Style.ERROR).display();
-            mining = false;
-            return;
         }
-        MineThread mineThread = new MineThread();
-        mineThread.start();
+    }
+
+    /**
+     * Stops the miner process
+     */
+    public void stopMining() {
+        JobHandle<Void> job = mineJob;
+        if (job != null) {
+            job.cancel();
+        }
+    }
+
+    private void stopProcess() {
+        Process process = minerProcess;
+        if (process != null) {
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * Is the miner running right now?
+     * @return true while the miner process is alive
+     */
+    public boolean isMining() {
+        return mining.get();
+    }
+
+    /**
+     * Shares the cores with a plotter running on the same machine. The miner
+     * gets all the cores and the governor is told when each round starts.
+     * @param governor the governor also given to the plotter
+     */
+    public void setGovernor(CPUgovernor governor) {
+        cpusToMine = governor.getCpusToMine();
+        addRoundListener(governor);
+    }
+
+    /**
+     * Pauses plot writes on the disks while the miner reads them. The
+     * arbiter learns about every mining folder, also those added later.
+     * @param arbiter the arbiter also given to the plotter
+     */
+    public void setArbiter(IOarbiter arbiter) {
+        this.arbiter = arbiter;
+        for (File path : pathList) {
+            if (path != null) {
+                arbiter.addMiningFolder(path);
+            }
+        }
+        addRoundListener(arbiter);
+    }
+
+    /**
+     * Reads the fastest disks first and stops reading for the round when
+     * the remaining plots are unlikely to beat the best deadline. The miner
+     * process is then stopped, so the disks rest, and started again when
+     * the pool has a new block.
+     * @param planner the planner, set before startMining()
+     */
+    public void setScanPlanner(ScanPlanner planner) {
+        this.planner = planner;
+    }
+
+    /**
+     * How often the pool is asked for a new block after a round was cut,
+     * the delay before the next round starts. Default is 1 s.
+     * @param blockPollMillis time between two requests
+     */
+    public void setBlockPollMillis(long blockPollMillis) {
+        this.blockPollMillis = Math.max(100, blockPollMillis);
+    }
+
+    /**
+     * Be notified when the miner starts and finishes reading the plots
+     * @param listener called from the thread reading the miner output
+     */
+    public void addRoundListener(RoundListener listener) {
+        roundListeners.add(listener);
     }
 
     /**
@@ -161,37 +316,122 @@ public class Miner {
      */
     public void addMiningFolder(File path) {
         pathList.add(path);
+        if (arbiter != null) {
+            arbiter.addMiningFolder(path);
+        }
     }
 
-    class MineThread extends Thread {
-
-        @Override
-        @SuppressWarnings("CallToPrintStackTrace")
-        public void run() {
-            try {
-                String cmd = minerFile.getAbsolutePath() + " -c " + MINER_CONFIG_FILE;
+    @SuppressWarnings("CallToPrintStackTrace")
+    private void mine(JobContext context) {
+        try {
+            String cmd = minerFile.getAbsolutePath() + " -c " + MINER_CONFIG_FILE;
+            boolean restart = true;
+            while (restart && !context.isCancelled()) {
+                restart = false;
                 logger.info("Running miner with: " + cmd);
-                minerProcess = Runtime.getRuntime().exec(cmd, null, minerFile.getParentFile());
+                minerProcess = Runtime.getRuntime().exec(cmd, null, new File(TMP_DIR));
+                if (context.isCancelled()) {
+                    // cancelled while starting
+                    stopProcess();
+                }
 
                 InputStream stdIn = minerProcess.getInputStream();
                 InputStreamReader isr = new InputStreamReader(stdIn);
                 BufferedReader br = new BufferedReader(isr);
+                long plannedHeight = -1;
                 boolean isAlive = minerProcess.isAlive();
                 while (isAlive) {
                     String line = br.readLine();
                     if (line != null) {
                         logger.info(line);
+                        minerLog.parse(line);
                         // addToConsole(MINER_APP, line);
+                        if (minerLog.getHeight() > 0 && minerLog.getHeight() != plannedHeight) {
+                            plannedHeight = minerLog.getHeight();
+                            if (planner != null) {
+                                // no cut until we know the difficulty of this block
+                                planner.setBaseTarget(0);
+                            }
+                            long height = plannedHeight;
+                            poolRequests.execute(() -> updateMiningInfo(height));
+                        }
+                        if (planner != null && !restart && planner.shouldStop(minerLog)) {
+                            restart = true;
+                            stopProcess();
+                            minerLog.abortRound();
+                        }
                     }
                     isAlive = minerProcess.isAlive();
-                    
+
+                }
+                if (restart) {
+                    restart = waitForNewBlock(context, minerLog.getHeight());
+                }
+                if (restart) {
+                    // the fastest disks measured so far are read first
+                    writeMinerConfig();
                 }
-                mining = false;
+            }
+            if (minerExecutable == null) {
                 minerFile.delete();
-            } catch (IOException e) {
-                e.printStackTrace();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            mining.set(false);
+        }
+    }
+
+    /**
+     * Asks the pool for the current block
+     * @return the mining information, null when the pool did not answer
+     */
+    private JsonObject getMiningInfo() {
+        try {
+            long started = System.nanoTime();
+            Request request = new Request.Builder().url(pool + "/burst?requestType=getMiningInfo").build();
+            Response response = CLIENT.newCall(request).execute();
+            String jsonData = response.body().string();
+            Metrics.timer("miner_pool_rtt", "pool", pool).record(System.nanoTime() - started);
+            return JsonParser.parseString(jsonData).getAsJsonObject();
+        } catch (JsonSyntaxException | IllegalStateException | IOException e) {
+            logger.error("Failed to get the mining info from " + pool + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Asks the pool about a new block, once per block, which also keeps the
+     * pool round trip time up to date
+     */
+    private void updateMiningInfo(long height) {
+        JsonObject info = getMiningInfo();
+        if (planner != null && info != null && info.has("baseTarget") && info.has("height")
+                && info.get("height").getAsLong() == height) {
+            planner.setBaseTarget(info.get("baseTarget").getAsLong());
+        }
+    }
+
+    /**
+     * Waits until the pool has a block above the given height
+     * @return false when mining was stopped while waiting
+     */
+    @SuppressWarnings("SleepWhileInLoop")
+    private boolean waitForNewBlock(JobContext context, long height) {
+        logger.info("Waiting for the block after " + height);
+        while (!context.isCancelled()) {
+            JsonObject info = getMiningInfo();
+            if (info != null && info.has("height") && info.get("height").getAsLong() > height) {
+                // restart right away, the new miner starts with this block
+                return true;
+            }
+            try {
+                Thread.sleep(blockPollMillis);
+            } catch (InterruptedException e) {
+                return false;
             }
         }
-    };
+        return false;
+    }
     
 }
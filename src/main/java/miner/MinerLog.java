@@ -0,0 +1,244 @@
+/*
+ * Description: Reads the output of the miner and keeps the round statistics
+ * License: Apache-2.0
+ */
+package miner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import metrics.Metrics;
+
+/**
+ * The miner runs as a separate process, the only way to know what happens
+ * inside a round is to read the lines that it writes on the console. Lines
+ * that are not recognized are simply ignored.
+ */
+public class MinerLog {
+
+    private static final Pattern NEW_BLOCK
+            = Pattern.compile("new block: height=(\\d+)");
+    private static final Pattern ROUND_FINISHED
+            = Pattern.compile("round finished: roundtime=(\\d+)\\s?ms(?:, speed=([\\d.]+)\\s?MiB/s)?");
+    private static final Pattern DEADLINE
+            = Pattern.compile("deadline (captured|accepted|rejected)\\b.*?deadline=(\\d+)");
+    private static final Pattern NOT_ACCEPTED
+            = Pattern.compile("submission not accepted|error submitting");
+    // printed for each drive when show_drive_stats is enabled, "drive 803 finished, speed=120 MiB/s"
+    private static final Pattern DRIVE
+            = Pattern.compile("drive\\s+(.+?)\\s+finished, speed=([\\d.]+)\\s?MiB/s");
+
+    private static final long ONE_MIB = 1048576L;
+
+    private final long targetDeadline;
+
+    private final LongAdder rounds = Metrics.counter("miner_rounds_total");
+    private final LongAdder deadlinesFound = Metrics.counter("miner_deadlines_found_total");
+    private final LongAdder deadlinesSubmitted = Metrics.counter("miner_deadlines_submitted_total");
+    private final LongAdder deadlinesAccepted = Metrics.counter("miner_deadlines_accepted_total");
+    private final LongAdder deadlinesRejected = Metrics.counter("miner_deadlines_rejected_total");
+    private final AtomicLong height = Metrics.gauge("miner_block_height");
+    private final AtomicLong bestDeadline = Metrics.gauge("miner_best_deadline");
+    private final AtomicLong readSpeed = Metrics.gauge("miner_read_speed_bytes");
+    // submitted in this round, waiting for the answer of the pool
+    private final AtomicLong pendingSubmissions = new AtomicLong();
+
+    private volatile long roundStartNanos;
+    private volatile boolean scanning;
+    private final Set<String> disksScanned = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> diskSpeeds = new ConcurrentHashMap<>();
+    private final List<RoundListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<File> folders = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param targetDeadline the miner only submits deadlines up to this value
+     */
+    public MinerLog(long targetDeadline) {
+        this.targetDeadline = targetDeadline;
+    }
+
+    public void addListener(RoundListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * The miner names drives, not folders, these folders are given to the
+     * listeners when their drive was read
+     * @param plotFolders the folders in the miner configuration
+     */
+    public void setFolders(Collection<File> plotFolders) {
+        folders.clear();
+        folders.addAll(plotFolders);
+    }
+
+    /**
+     * @param drive the drive as named by the miner
+     * @return the plot folders on that drive
+     */
+    public List<File> getFolders(String drive) {
+        List<File> onDrive = new ArrayList<>();
+        for (File folder : folders) {
+            if (DriveIds.matches(drive, folder)) {
+                onDrive.add(folder);
+            }
+        }
+        return onDrive;
+    }
+
+    /**
+     * Updates the statistics with one line written by the miner
+     * @param line the text as it was written
+     */
+    public void parse(String line) {
+        Matcher matcher = NEW_BLOCK.matcher(line);
+        if (matcher.find()) {
+            roundStartNanos = System.nanoTime();
+            disksScanned.clear();
+            scanning = true;
+            rounds.increment();
+            long newHeight = Long.parseLong(matcher.group(1));
+            height.set(newHeight);
+            bestDeadline.set(Long.MAX_VALUE);
+            pendingSubmissions.set(0);
+            for (RoundListener listener : listeners) {
+                listener.roundStarted(newHeight);
+            }
+            return;
+        }
+        matcher = ROUND_FINISHED.matcher(line);
+        if (matcher.find()) {
+            scanning = false;
+            long scanMillis = Long.parseLong(matcher.group(1));
+            Metrics.timer("miner_round_scan").recordMillis(scanMillis);
+            if (matcher.group(2) != null) {
+                readSpeed.set((long) (Double.parseDouble(matcher.group(2)) * ONE_MIB));
+            }
+            for (RoundListener listener : listeners) {
+                listener.roundFinished(scanMillis);
+            }
+            return;
+        }
+        matcher = DEADLINE.matcher(line);
+        if (matcher.find()) {
+            long deadline = Long.parseLong(matcher.group(2));
+            switch (matcher.group(1)) {
+                case "captured":
+                    deadlinesFound.increment();
+                    // the miner only sends what the pool accepts
+                    if (deadline <= targetDeadline) {
+                        deadlinesSubmitted.increment();
+                        pendingSubmissions.incrementAndGet();
+                    }
+                    break;
+                case "accepted":
+                    deadlinesAccepted.increment();
+                    bestDeadline.accumulateAndGet(deadline, Math::min);
+                    answered();
+                    break;
+                default:
+                    deadlinesRejected.increment();
+                    answered();
+            }
+            return;
+        }
+        matcher = NOT_ACCEPTED.matcher(line);
+        if (matcher.find()) {
+            deadlinesRejected.increment();
+            // after an error the miner may send the deadline again
+            if (matcher.group().startsWith("submission")) {
+                answered();
+            }
+            return;
+        }
+        matcher = DRIVE.matcher(line);
+        if (matcher.find()) {
+            String disk = matcher.group(1).trim();
+            long speed = (long) (Double.parseDouble(matcher.group(2)) * ONE_MIB);
+            // the drives are read in parallel from the start of the round
+            long scanMillis = (System.nanoTime() - roundStartNanos) / 1000000L;
+            Metrics.timer("miner_disk_scan", "disk", disk).recordMillis(scanMillis);
+            Metrics.gauge("miner_disk_read_speed_bytes", "disk", disk).set(speed);
+            diskSpeeds.put(disk, speed);
+            disksScanned.add(disk);
+            List<File> onDrive = getFolders(disk);
+            for (RoundListener listener : listeners) {
+                listener.driveFinished(disk, onDrive, scanMillis);
+            }
+        }
+    }
+
+    private void answered() {
+        pendingSubmissions.updateAndGet(pending -> Math.max(0, pending - 1));
+    }
+
+    /**
+     * Is the miner reading the disks right now?
+     * @return true between a new block and the end of its round
+     */
+    public boolean isScanning() {
+        return scanning;
+    }
+
+    public long getRoundStartNanos() {
+        return roundStartNanos;
+    }
+
+    public long getHeight() {
+        return height.get();
+    }
+
+    /**
+     * @return best deadline accepted in this round, Long.MAX_VALUE when none
+     */
+    public long getBestDeadline() {
+        return bestDeadline.get();
+    }
+
+    /**
+     * A deadline is lost if the miner is stopped while it is sent
+     * @return deadlines of this round submitted to the pool and not yet
+     * accepted or rejected
+     */
+    public long getPendingSubmissions() {
+        return pendingSubmissions.get();
+    }
+
+    /**
+     * @return the disks (as named by the miner) finished in this round
+     */
+    public Set<String> getDisksScanned() {
+        return Collections.unmodifiableSet(disksScanned);
+    }
+
+    /**
+     * @return last read speed of each disk, in bytes per second
+     */
+    public Map<String, Long> getDiskSpeeds() {
+        return Collections.unmodifiableMap(diskSpeeds);
+    }
+
+    /**
+     * Ends the round when the miner was stopped before finishing it, the
+     * listeners are told as if the round had finished
+     */
+    public void abortRound() {
+        if (!scanning) {
+            return;
+        }
+        scanning = false;
+        long scanMillis = (System.nanoTime() - roundStartNanos) / 1000000L;
+        for (RoundListener listener : listeners) {
+            listener.roundFinished(scanMillis);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Description: Notified when the miner starts and finishes reading the disks
+ * License: Apache-2.0
+ */
+package miner;
+
+import java.io.File;
+import java.util.List;
+
+public interface RoundListener {
+
+    /**
+     * A new block arrived and the miner started reading the plots
+     * @param height the height of the new block
+     */
+    void roundStarted(long height);
+
+    /**
+     * The miner finished reading all the plots for the current block
+     * @param scanMillis how long the reading took
+     */
+    void roundFinished(long scanMillis);
+
+    /**
+     * The miner finished reading one drive, only known when it prints the
+     * drive statistics
+     * @param drive the drive as named by the miner, see DriveIds
+     * @param folders the plot folders on that drive
+     * @param scanMillis time from the start of the round
+     */
+    default void driveFinished(String drive, List<File> folders, long scanMillis) {
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Description: Decides the order of the plot folders and when a round is not worth finishing
+ * License: Apache-2.0
+ */
+package miner;
+
+import static core.Global.logger;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import metrics.Metrics;
+import plotter.PlotFile;
+
+/**
+ * The fastest disks with the most nonces are read first, so that a good
+ * deadline is found early in the round. Each nonce read gives a deadline
+ * below D with probability D * baseTarget / 2^64, once the nonces still to
+ * be read are unlikely to beat the best deadline accepted so far the round
+ * is not worth finishing. The miner stops reading on its own when a new
+ * block arrives. A round is never cut while a deadline captured by the
+ * miner waits for the answer of the pool, stopping the miner would lose it.
+ *
+ * Disks are named by the miner in its drive statistics, see DriveIds for
+ * how a folder is matched with its disk.
+ */
+public class ScanPlanner {
+
+    private static final double TWO_TO_64 = 18446744073709551616.0;
+
+    private final Map<String, Long> diskSpeeds = new ConcurrentHashMap<>();
+    private final Map<File, Long> folderNonces = new ConcurrentHashMap<>();
+    private final LongAdder roundsCut = Metrics.counter("miner_rounds_cut_total");
+    private volatile double minChance = 0.01;
+    private volatile long baseTarget;
+
+    /**
+     * @param minChance expected number of better deadlines below which the
+     * round is cut, 0.01 by default
+     */
+    public void setMinChance(double minChance) {
+        this.minChance = minChance;
+    }
+
+    /**
+     * @param baseTarget of the block being mined, 0 when not known (rounds are then never cut)
+     */
+    public void setBaseTarget(long baseTarget) {
+        this.baseTarget = baseTarget;
+    }
+
+    public long getBaseTarget() {
+        return baseTarget;
+    }
+
+    /**
+     * @param disk name given by the miner
+     * @param bytesPerSecond measured read speed
+     */
+    public void setDiskSpeed(String disk, long bytesPerSecond) {
+        diskSpeeds.put(disk, bytesPerSecond);
+    }
+
+    /**
+     * Orders the folders to read, fastest disks first and the folders with
+     * more nonces first on disks of the same speed
+     * @param folders the mining folders
+     * @return a new list with the same folders
+     */
+    public List<File> order(List<File> folders) {
+        List<File> ordered = new ArrayList<>();
+        for (File folder : folders) {
+            folderNonces.put(folder, countNonces(folder));
+            ordered.add(folder);
+        }
+        ordered.sort(Comparator.comparingLong(this::getSpeed).reversed()
+                .thenComparing(Comparator.comparingLong((File folder) -> folderNonces.get(folder)).reversed()));
+        return ordered;
+    }
+
+    private static long countNonces(File folder) {
+        long nonces = 0;
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                PlotFile plot = PlotFile.parse(file);
+                if (plot != null) {
+                    nonces += plot.getNonces();
+                }
+            }
+        }
+        return nonces;
+    }
+
+    /**
+     * @param folder a mining folder
+     * @return the disk name given by the miner, null when not measured yet
+     */
+    String getDisk(File folder) {
+        String best = null;
+        for (String disk : diskSpeeds.keySet()) {
+            // the longest volume path when they are nested
+            if (DriveIds.matches(disk, folder) && (best == null || disk.length() > best.length())) {
+                best = disk;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param folder a mining folder
+     * @return read speed in bytes per second, 0 when not measured yet
+     */
+    public long getSpeed(File folder) {
+        String disk = getDisk(folder);
+        return disk == null ? 0 : diskSpeeds.get(disk);
+    }
+
+    /**
+     * @param disksScanned disks finished in this round
+     * @return nonces on the folders not read yet, from the last call to order()
+     */
+    public long getRemainingNonces(Set<String> disksScanned) {
+        long remaining = 0;
+        for (Map.Entry<File, Long> entry : folderNonces.entrySet()) {
+            if (!isScanned(entry.getKey(), disksScanned)) {
+                remaining += entry.getValue();
+            }
+        }
+        return remaining;
+    }
+
+    private static boolean isScanned(File folder, Set<String> disksScanned) {
+        for (String disk : disksScanned) {
+            if (DriveIds.matches(disk, folder)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param bestDeadline best deadline so far
+     * @param remainingNonces nonces still to be read
+     * @return expected number of better deadlines in the remaining nonces
+     */
+    public double getChanceToImprove(long bestDeadline, long remainingNonces) {
+        if (baseTarget <= 0 || bestDeadline == Long.MAX_VALUE) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return remainingNonces * (double) bestDeadline * baseTarget / TWO_TO_64;
+    }
+
+    /**
+     * Should the miner stop reading for the current round?
+     * @param log statistics of the running miner
+     * @return true when the remaining disks are unlikely to beat the best deadline
+     */
+    public boolean shouldStop(MinerLog log) {
+        diskSpeeds.putAll(log.getDiskSpeeds());
+        if (!log.isScanning() || log.getPendingSubmissions() > 0) {
+            // never kill the miner while it sends a deadline
+            return false;
+        }
+        long remaining = getRemainingNonces(log.getDisksScanned());
+        if (remaining == 0) {
+            // finishing anyway
+            return false;
+        }
+        double chance = getChanceToImprove(log.getBestDeadline(), remaining);
+        if (chance >= minChance) {
+            return false;
+        }
+        logger.info("Stopping the round at height " + log.getHeight() + ", " + remaining
+                + " nonces left are unlikely to beat deadline " + log.getBestDeadline());
+        roundsCut.increment();
+        return true;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Description: The plot files proposed for each disk
+ * License: Apache-2.0
+ */
+package plotter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import utils.NumberFormatting;
+
+public class CapacityPlan {
+
+    private static final long ONE_TIB = 1099511627776L;
+
+    /**
+     * What will be written on one disk
+     */
+    public static class Disk {
+
+        private final File folder;
+        private final String fileSystem;
+        private final long usableBytes;
+        private final List<PlotFile> files = new ArrayList<>();
+
+        Disk(File folder, String fileSystem, long usableBytes) {
+            this.folder = folder;
+            this.fileSystem = fileSystem;
+            this.usableBytes = usableBytes;
+        }
+
+        public File getFolder() {
+            return folder;
+        }
+
+        public String getFileSystem() {
+            return fileSystem;
+        }
+
+        /**
+         * @return the free space of the disk when the plan was made
+         */
+        public long getUsableBytes() {
+            return usableBytes;
+        }
+
+        public List<PlotFile> getFiles() {
+            return Collections.unmodifiableList(files);
+        }
+
+        void add(PlotFile file) {
+            files.add(file);
+        }
+
+        public long getNonces() {
+            long total = 0;
+            for (PlotFile file : files) {
+                total += file.getNonces();
+            }
+            return total;
+        }
+
+        public long getBytes() {
+            return getNonces() * PlotFile.BYTES_OF_A_NONCE;
+        }
+    }
+
+    private final List<Disk> disks = new ArrayList<>();
+
+    void add(Disk disk) {
+        disks.add(disk);
+    }
+
+    public List<Disk> getDisks() {
+        return Collections.unmodifiableList(disks);
+    }
+
+    /**
+     * @return all the files of the plan, in the order they should be plotted
+     */
+    public List<PlotFile> getFiles() {
+        List<PlotFile> files = new ArrayList<>();
+        for (Disk disk : disks) {
+            files.addAll(disk.getFiles());
+        }
+        return files;
+    }
+
+    public long getBytes() {
+        long total = 0;
+        for (Disk disk : disks) {
+            total += disk.getBytes();
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return getFiles().isEmpty();
+    }
+
+    /**
+     * Describes the plan without writing anything
+     * @return one line per disk and per file, plus the total
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        for (Disk disk : disks) {
+            report.append(disk.getFolder().getAbsolutePath())
+                    .append(" (").append(disk.getFileSystem()).append("): ")
+                    .append(disk.getFiles().size()).append(" file(s), ");
+            NumberFormatting.SIGNA_2.formatTo(disk.getBytes(), ONE_TIB, report).append(" TiB of ");
+            NumberFormatting.SIGNA_2.formatTo(disk.getUsableBytes(), ONE_TIB, report).append(" TiB free\n");
+            for (PlotFile file : disk.getFiles()) {
+                report.append("  ").append(file.getFile().getName()).append('\n');
+            }
+        }
+        report.append("Total to add: ");
+        NumberFormatting.SIGNA_2.formatTo(getBytes(), ONE_TIB, report).append(" TiB");
+        return report.toString();
+    }
+}
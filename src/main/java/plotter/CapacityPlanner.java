@@ -0,0 +1,121 @@
+/*
+ * Description: Sizes the new plot files to fill every disk
+ * License: Apache-2.0
+ */
+package plotter;
+
+import static core.Global.logger;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Each disk gets as few files as its file system allows (usually one),
+ * filling the free space up to a small reserve. The number of nonces of
+ * every file is a multiple of the sector size, as needed by direct I/O, and
+ * the new ranges never overlap the plots already in the catalog.
+ */
+public class CapacityPlanner {
+
+    private static final int SCOOP_SIZE = 64;
+    // largest file allowed on FAT file systems
+    private static final long FAT_MAX_FILE = 4294967295L;
+
+    private long sectorSize = 4096;
+    private long reserveBytes = 64L * 1024 * 1024;
+    private long maxFileNonces = Long.MAX_VALUE;
+
+    /**
+     * Nonces are rounded so that each scoop region starts on a sector
+     * @param sectorSize in bytes, 4096 for most disks
+     */
+    public void setSectorSize(long sectorSize) {
+        this.sectorSize = Math.max(SCOOP_SIZE, sectorSize);
+    }
+
+    /**
+     * Space left free on every disk for the file system
+     * @param reserveBytes bytes that are not used
+     */
+    public void setReserveBytes(long reserveBytes) {
+        this.reserveBytes = Math.max(0, reserveBytes);
+    }
+
+    /**
+     * Limits the size of the files, for example to move them later
+     * @param maxFileNonces largest number of nonces in one file
+     */
+    public void setMaxFileNonces(long maxFileNonces) {
+        this.maxFileNonces = Math.max(1, maxFileNonces);
+    }
+
+    /**
+     * @return the number of nonces that all file sizes are a multiple of
+     */
+    public long getAlignment() {
+        return sectorSize / SCOOP_SIZE;
+    }
+
+    /**
+     * Plans the new files for all folders of the catalog. Folders on the
+     * same file system share the free space, only the first one of them
+     * gets files.
+     * @param catalog the folders and their existing plots
+     * @param startNonce the preferred first nonce of the new plots
+     * @return the plan, empty when no disk has space
+     */
+    public CapacityPlan plan(PlotCatalog catalog, long startNonce) {
+        CapacityPlan plan = new CapacityPlan();
+        Set<FileStore> planned = new HashSet<>();
+        long alignment = getAlignment();
+        long nonce = startNonce;
+
+        for (File folder : catalog.getFolders()) {
+            FileStore store;
+            try {
+                store = Files.getFileStore(folder.toPath());
+            } catch (IOException ex) {
+                logger.error("Folder not available: " + folder.getAbsolutePath());
+                continue;
+            }
+            if (!planned.add(store)) {
+                logger.info("Skipping " + folder.getAbsolutePath() + ", same disk as another folder");
+                continue;
+            }
+
+            long usable = folder.getUsableSpace();
+            CapacityPlan.Disk disk = new CapacityPlan.Disk(folder, store.type(), usable);
+            plan.add(disk);
+
+            long noncesFree = align(Math.max(0, usable - reserveBytes) / PlotFile.BYTES_OF_A_NONCE, alignment);
+            long maxNonces = align(Math.min(maxFileNonces, getFileSystemMaxNonces(store.type())), alignment);
+            if (maxNonces == 0) {
+                continue;
+            }
+            while (noncesFree >= alignment) {
+                long nonces = Math.min(noncesFree, maxNonces);
+                nonce = catalog.findFreeStart(nonce, nonces);
+                disk.add(new PlotFile(folder, catalog.getNumericId(), nonce, nonces));
+                nonce += nonces;
+                noncesFree -= nonces;
+            }
+        }
+        return plan;
+    }
+
+    private static long align(long nonces, long alignment) {
+        return nonces - nonces % alignment;
+    }
+
+    private static long getFileSystemMaxNonces(String type) {
+        String name = type.toLowerCase(Locale.ENGLISH);
+        if (name.equals("vfat") || name.equals("msdos") || name.startsWith("fat")) {
+            return FAT_MAX_FILE / PlotFile.BYTES_OF_A_NONCE;
+        }
+        return Long.MAX_VALUE;
+    }
+}
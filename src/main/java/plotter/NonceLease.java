@@ -0,0 +1,80 @@
+/*
+ * Description: A range of nonces given to one plotting worker
+ * License: Apache-2.0
+ */
+package plotter;
+
+import java.io.File;
+
+public class NonceLease {
+
+    private final String id;
+    private final String numericId;
+    private final long startNonce;
+    private final long nonces;
+    private final String worker;
+    private volatile long expiresAtMillis;
+    private volatile long progress;
+
+    public NonceLease(String id, String numericId, long startNonce, long nonces, String worker,
+            long expiresAtMillis) {
+        this.id = id;
+        this.numericId = numericId;
+        this.startNonce = startNonce;
+        this.nonces = nonces;
+        this.worker = worker;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getNumericId() {
+        return numericId;
+    }
+
+    public long getStartNonce() {
+        return startNonce;
+    }
+
+    public long getNonces() {
+        return nonces;
+    }
+
+    public String getWorker() {
+        return worker;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    void setExpiresAtMillis(long expiresAtMillis) {
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    /**
+     * @return nonces plotted, as reported on the last heartbeat
+     */
+    public long getProgress() {
+        return progress;
+    }
+
+    void setProgress(long progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * @param folder where the plot is written
+     * @return the plot file that holds the nonces of this lease
+     */
+    public PlotFile toPlotFile(File folder) {
+        return new PlotFile(folder, numericId, startNonce, nonces);
+    }
+
+    @Override
+    public String toString() {
+        return id + " " + PlotFile.getName(numericId, startNonce, nonces) + " (" + worker + ")";
+    }
+}
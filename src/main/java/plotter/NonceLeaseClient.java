@@ -0,0 +1,104 @@
+/*
+ * Description: Asks a nonce lease coordinator for ranges to plot
+ * License: Apache-2.0
+ */
+package plotter;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+public class NonceLeaseClient {
+
+    private static final OkHttpClient CLIENT = new OkHttpClient();
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private final String url;
+    private final String worker;
+
+    /**
+     * @param url of the coordinator, e.g. http://192.168.0.10:8125
+     * @param worker name of this machine, shown by the coordinator
+     */
+    public NonceLeaseClient(String url, String worker) {
+        this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        this.worker = worker;
+    }
+
+    public String getWorker() {
+        return worker;
+    }
+
+    /**
+     * @param numericId the account
+     * @param nonces size of the range wanted
+     * @return a new lease, possibly smaller than asked
+     * @throws IOException when the coordinator can not be reached
+     */
+    public NonceLease lease(String numericId, long nonces) throws IOException {
+        JsonObject json = post("/lease?account=" + encode(numericId) + "&nonces=" + Long.toUnsignedString(nonces)
+                + "&worker=" + encode(worker));
+        if (!json.has("id")) {
+            throw new IOException("No lease given: " + json);
+        }
+        return new NonceLease(json.get("id").getAsString(), json.get("account").getAsString(),
+                Long.parseUnsignedLong(json.get("startNonce").getAsString()),
+                Long.parseUnsignedLong(json.get("nonces").getAsString()), worker,
+                System.currentTimeMillis() + json.get("expiresInMillis").getAsLong());
+    }
+
+    /**
+     * @param lease being plotted
+     * @param progress nonces plotted so far
+     * @return false when the lease was lost, plotting must stop and the file be deleted
+     * @throws IOException when the coordinator can not be reached
+     */
+    public boolean heartbeat(NonceLease lease, long progress) throws IOException {
+        return isOk(post("/heartbeat?id=" + encode(lease.getId()) + "&progress=" + progress));
+    }
+
+    /**
+     * @param lease fully plotted
+     * @return false when the lease was lost before completing
+     * @throws IOException when the coordinator can not be reached
+     */
+    public boolean complete(NonceLease lease) throws IOException {
+        return isOk(post("/complete?id=" + encode(lease.getId())));
+    }
+
+    /**
+     * Gives a lease back so that another worker plots it
+     * @param lease not plotted
+     * @return false when the lease had already expired
+     * @throws IOException when the coordinator can not be reached
+     */
+    public boolean release(NonceLease lease) throws IOException {
+        return isOk(post("/release?id=" + encode(lease.getId())));
+    }
+
+    private static boolean isOk(JsonObject json) {
+        return json.has("ok") && json.get("ok").getAsBoolean();
+    }
+
+    private JsonObject post(String path) throws IOException {
+        Request request = new Request.Builder().url(url + path).post(RequestBody.create(JSON, "")).build();
+        Response response = CLIENT.newCall(request).execute();
+        try {
+            return JsonParser.parseString(response.body().string()).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException ex) {
+            throw new IOException("Invalid answer from the coordinator (" + response.code() + ")", ex);
+        }
+    }
+
+    private static String encode(String value) throws UnsupportedEncodingException {
+        return URLEncoder.encode(value, "UTF-8");
+    }
+}
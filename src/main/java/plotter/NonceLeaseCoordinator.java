@@ -0,0 +1,388 @@
+/*
+ * Description: Hands out ranges of nonces to plotters on many machines
+ * License: Apache-2.0
+ */
+package plotter;
+
+import static core.Global.logger;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Each worker asks for a lease, plots it while sending heartbeats and
+ * reports it complete. A lease without heartbeat for longer than its time
+ * to live expires and its range goes to the next worker that asks, the
+ * worker that lost it must delete its partial file (it learns that when
+ * the heartbeat is refused). Ranges never overlap, so a cluster can fill a
+ * farm without duplicate nonces.
+ *
+ * The first nonce must be above the plots already on the farm, given
+ * explicitly or raised with reserve() from the catalog of each account.
+ * The next free nonce of each account can be kept in a state file. After a
+ * restart the coordinator continues from there, the ranges that were
+ * leased but not completed stay unused, which wastes nonces but never
+ * duplicates them.
+ *
+ * A worker may send complete again when the answer was lost, the recent
+ * completed leases are remembered and the answer is the same.
+ *
+ * HTTP API, all answers are JSON:
+ * POST /lease?account=&amp;nonces=&amp;worker=
+ * POST /heartbeat?id=&amp;progress=
+ * POST /complete?id=
+ * POST /release?id=
+ * GET /status
+ */
+public class NonceLeaseCoordinator {
+
+    private static final int MAX_COMPLETED_IDS = 10000;
+
+    private final long ttlMillis;
+    private final Map<String, Long> nextNonce = new HashMap<>();
+    private final Map<String, Deque<long[]>> reclaimed = new HashMap<>();
+    private final Map<String, NonceLease> leases = new LinkedHashMap<>();
+    // ids of the last completed leases, a repeated complete is not an error
+    private final Map<String, Boolean> completedIds = new LinkedHashMap<String, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_COMPLETED_IDS;
+        }
+    };
+    private final long initialNonce;
+    private File stateFile;
+    private long completed;
+    private HttpServer server;
+
+    /**
+     * @param ttlMillis time a lease lives without a heartbeat
+     * @param initialNonce first nonce given for accounts seen for the first
+     * time, above all the plots already on the farm
+     */
+    public NonceLeaseCoordinator(long ttlMillis, long initialNonce) {
+        this.ttlMillis = ttlMillis;
+        this.initialNonce = initialNonce;
+    }
+
+    /**
+     * Makes sure that new leases start after the plots already on the farm
+     * @param catalog the existing plots of one account
+     */
+    public synchronized void reserve(PlotCatalog catalog) {
+        String account = catalog.getNumericId();
+        long next = nextNonce.getOrDefault(account, initialNonce);
+        for (PlotFile plot : catalog.getPlots()) {
+            if (Long.compareUnsigned(plot.getEndNonce(), next) > 0) {
+                next = plot.getEndNonce();
+            }
+        }
+        nextNonce.put(account, next);
+        saveState();
+    }
+
+    /**
+     * Keeps the next free nonce of each account in a file
+     * @param stateFile read now when it exists, written on every lease
+     * @throws IOException when the file exists but can not be read
+     */
+    public synchronized void setStateFile(File stateFile) throws IOException {
+        this.stateFile = stateFile;
+        if (stateFile.exists()) {
+            String json = new String(Files.readAllBytes(stateFile.toPath()), StandardCharsets.UTF_8);
+            Map<String, String> saved = new Gson().fromJson(json,
+                    new TypeToken<Map<String, String>>() { }.getType());
+            if (saved != null) {
+                for (Map.Entry<String, String> entry : saved.entrySet()) {
+                    long next = Long.parseUnsignedLong(entry.getValue());
+                    nextNonce.put(entry.getKey(), Long.compareUnsigned(next, initialNonce) > 0 ? next : initialNonce);
+                }
+            }
+        }
+    }
+
+    private void saveState() {
+        if (stateFile == null) {
+            return;
+        }
+        Map<String, String> state = new HashMap<>();
+        for (Map.Entry<String, Long> entry : nextNonce.entrySet()) {
+            state.put(entry.getKey(), Long.toUnsignedString(entry.getValue()));
+        }
+        try {
+            Path partial = stateFile.toPath().resolveSibling(stateFile.getName() + ".tmp");
+            Files.write(partial, new Gson().toJson(state).getBytes(StandardCharsets.UTF_8));
+            Files.move(partial, stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            logger.error("Failed to save the lease state: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Takes back the ranges of leases that missed their heartbeats
+     */
+    public synchronized void expireLeases() {
+        long now = System.currentTimeMillis();
+        Iterator<NonceLease> iterator = leases.values().iterator();
+        while (iterator.hasNext()) {
+            NonceLease lease = iterator.next();
+            if (lease.getExpiresAtMillis() < now) {
+                logger.info("Lease expired: " + lease);
+                iterator.remove();
+                reclaim(lease);
+            }
+        }
+    }
+
+    private void reclaim(NonceLease lease) {
+        reclaimed.computeIfAbsent(lease.getNumericId(), account -> new ArrayDeque<>())
+                .add(new long[]{lease.getStartNonce(), lease.getNonces()});
+    }
+
+    /**
+     * Gives a new range of nonces to a worker
+     * @param account numeric id of the account
+     * @param nonces size of the range wanted
+     * @param worker name of the worker, for the logs
+     * @return the lease, reclaimed ranges may be smaller than asked
+     */
+    public synchronized NonceLease lease(String account, long nonces, String worker) {
+        expireLeases();
+        long start;
+        long size;
+        Deque<long[]> free = reclaimed.get(account);
+        if (free != null && !free.isEmpty()) {
+            long[] range = free.poll();
+            start = range[0];
+            size = Math.min(range[1], nonces);
+            if (range[1] > size) {
+                free.addFirst(new long[]{start + size, range[1] - size});
+            }
+        } else {
+            start = nextNonce.getOrDefault(account, initialNonce);
+            size = nonces;
+            nextNonce.put(account, start + size);
+            saveState();
+        }
+        NonceLease lease = new NonceLease(UUID.randomUUID().toString(), account, start, size, worker,
+                System.currentTimeMillis() + ttlMillis);
+        leases.put(lease.getId(), lease);
+        logger.info("Lease given: " + lease);
+        return lease;
+    }
+
+    /**
+     * Keeps a lease alive
+     * @param id the lease
+     * @param progress nonces plotted so far
+     * @return false when the lease expired, the worker must stop and delete its file
+     */
+    public synchronized boolean heartbeat(String id, long progress) {
+        expireLeases();
+        NonceLease lease = leases.get(id);
+        if (lease == null) {
+            return false;
+        }
+        lease.setProgress(progress);
+        lease.setExpiresAtMillis(System.currentTimeMillis() + ttlMillis);
+        return true;
+    }
+
+    /**
+     * The worker finished plotting the lease, the same lease can be
+     * completed again when the worker did not get the answer
+     * @param id the lease
+     * @return false when the lease had already expired
+     */
+    public synchronized boolean complete(String id) {
+        NonceLease lease = leases.remove(id);
+        if (lease == null) {
+            return completedIds.containsKey(id);
+        }
+        completedIds.put(id, Boolean.TRUE);
+        completed += lease.getNonces();
+        logger.info("Lease completed: " + lease);
+        return true;
+    }
+
+    /**
+     * The worker gives the lease back without plotting it
+     * @param id the lease
+     * @return false when the lease had already expired
+     */
+    public synchronized boolean release(String id) {
+        NonceLease lease = leases.remove(id);
+        if (lease == null) {
+            return false;
+        }
+        reclaim(lease);
+        return true;
+    }
+
+    public synchronized List<NonceLease> getLeases() {
+        return new ArrayList<>(leases.values());
+    }
+
+    /**
+     * @return nonces of all the completed leases
+     */
+    public synchronized long getCompletedNonces() {
+        return completed;
+    }
+
+    /**
+     * Serves the API
+     * @param port where to listen, 0 for any free port
+     * @return the port that is being used
+     * @throws IOException when the port is not available
+     */
+    public synchronized int start(int port) throws IOException {
+        if (server != null) {
+            return server.getAddress().getPort();
+        }
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        logger.info("Nonce lease coordinator running on port " + server.getAddress().getPort());
+        return server.getAddress().getPort();
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String path = exchange.getRequestURI().getPath();
+        JsonObject json = new JsonObject();
+        int status = 200;
+        try {
+            switch (path) {
+                case "/lease":
+                    NonceLease lease = lease(required(query, "account"),
+                            Long.parseUnsignedLong(required(query, "nonces")), query.getOrDefault("worker", "unknown"));
+                    json = toJson(lease);
+                    break;
+                case "/heartbeat":
+                    json.addProperty("ok", heartbeat(required(query, "id"),
+                            Long.parseLong(query.getOrDefault("progress", "0"))));
+                    break;
+                case "/complete":
+                    json.addProperty("ok", complete(required(query, "id")));
+                    break;
+                case "/release":
+                    json.addProperty("ok", release(required(query, "id")));
+                    break;
+                case "/status":
+                    JsonArray array = new JsonArray();
+                    for (NonceLease active : getLeases()) {
+                        array.add(toJson(active));
+                    }
+                    json.add("leases", array);
+                    json.addProperty("completedNonces", getCompletedNonces());
+                    break;
+                default:
+                    status = 404;
+                    json.addProperty("error", "Unknown request");
+            }
+            if (json.has("ok") && !json.get("ok").getAsBoolean()) {
+                // the lease is gone
+                status = 410;
+            }
+        } catch (IllegalArgumentException ex) {
+            status = 400;
+            json = new JsonObject();
+            json.addProperty("error", "Missing or invalid parameter");
+        }
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private JsonObject toJson(NonceLease lease) {
+        JsonObject json = new JsonObject();
+        json.addProperty("id", lease.getId());
+        json.addProperty("account", lease.getNumericId());
+        json.addProperty("startNonce", Long.toUnsignedString(lease.getStartNonce()));
+        json.addProperty("nonces", Long.toUnsignedString(lease.getNonces()));
+        json.addProperty("worker", lease.getWorker());
+        json.addProperty("progress", lease.getProgress());
+        json.addProperty("expiresInMillis", Math.max(0, lease.getExpiresAtMillis() - System.currentTimeMillis()));
+        return json;
+    }
+
+    private static String required(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing " + name);
+        }
+        return value;
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> values = new HashMap<>();
+        if (query == null) {
+            return values;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                values.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Runs a coordinator on its own
+     * @param args start=&lt;first nonce, above the existing plots&gt; port=8125
+     * ttl=&lt;seconds&gt; state=&lt;file&gt;
+     * @throws IOException when the port or the state file are not available
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals > 0) {
+                options.put(arg.substring(0, equals), arg.substring(equals + 1));
+            }
+        }
+        if (!options.containsKey("start")) {
+            System.err.println("The first nonce is required (start=), choose one above all the plots of the farm");
+            return;
+        }
+        NonceLeaseCoordinator coordinator = new NonceLeaseCoordinator(
+                Long.parseLong(options.getOrDefault("ttl", "300")) * 1000,
+                Long.parseUnsignedLong(options.get("start")));
+        coordinator.setStateFile(new File(options.getOrDefault("state", "nonce-leases.json")));
+        coordinator.start(Integer.parseInt(options.getOrDefault("port", "8125")));
+    }
+}
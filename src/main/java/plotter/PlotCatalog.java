@@ -0,0 +1,132 @@
+/*
+ * Description: The plot files of one account found on the registered folders
+ * License: Apache-2.0
+ */
+package plotter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The catalog is refreshed from the disk on request and changed as a whole
+ * (under one lock) when files are replaced, so readers never see half of
+ * an operation.
+ */
+public class PlotCatalog {
+
+    public static final Comparator<PlotFile> BY_START_NONCE
+            = (a, b) -> Long.compareUnsigned(a.getStartNonce(), b.getStartNonce());
+
+    private final String numericId;
+    private final Map<File, List<PlotFile>> plotsByFolder = new LinkedHashMap<>();
+
+    public PlotCatalog(String numericId) {
+        this.numericId = numericId;
+    }
+
+    public String getNumericId() {
+        return numericId;
+    }
+
+    /**
+     * Registers a folder and reads the plots inside
+     * @param folder where plots are stored
+     */
+    public synchronized void addFolder(File folder) {
+        plotsByFolder.put(folder.getAbsoluteFile(), scan(folder));
+    }
+
+    /**
+     * Reads again all the registered folders
+     */
+    public synchronized void refresh() {
+        for (Map.Entry<File, List<PlotFile>> entry : plotsByFolder.entrySet()) {
+            entry.setValue(scan(entry.getKey()));
+        }
+    }
+
+    private List<PlotFile> scan(File folder) {
+        List<PlotFile> plots = new ArrayList<>();
+        File[] files = folder.listFiles(File::isFile);
+        if (files != null) {
+            for (File file : files) {
+                PlotFile plot = PlotFile.parse(file);
+                if (plot != null && plot.getNumericId().equals(numericId)) {
+                    plots.add(plot);
+                }
+            }
+        }
+        plots.sort(BY_START_NONCE);
+        return plots;
+    }
+
+    public synchronized Set<File> getFolders() {
+        return new LinkedHashSet<>(plotsByFolder.keySet());
+    }
+
+    /**
+     * @param folder a registered folder
+     * @return the plots of the folder sorted by start nonce
+     */
+    public synchronized List<PlotFile> getPlots(File folder) {
+        List<PlotFile> plots = plotsByFolder.get(folder.getAbsoluteFile());
+        return plots == null ? new ArrayList<>() : new ArrayList<>(plots);
+    }
+
+    /**
+     * @return the plots of all folders sorted by start nonce
+     */
+    public synchronized List<PlotFile> getPlots() {
+        List<PlotFile> all = new ArrayList<>();
+        for (List<PlotFile> plots : plotsByFolder.values()) {
+            all.addAll(plots);
+        }
+        all.sort(BY_START_NONCE);
+        return all;
+    }
+
+    /**
+     * Finds a range of nonces that does not overlap any catalogued plot
+     * @param candidate the preferred first nonce
+     * @param nonces size of the range
+     * @return the candidate, or the first free nonce after it
+     */
+    public synchronized long findFreeStart(long candidate, long nonces) {
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            for (PlotFile plot : getPlots()) {
+                if (plot.overlaps(candidate, nonces)) {
+                    candidate = plot.getEndNonce();
+                    moved = true;
+                }
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * Replaces plots by another one in a single step, for example after
+     * merging them
+     * @param removed plots that no longer exist
+     * @param added the new plot, null when only removing
+     */
+    public synchronized void replace(Collection<PlotFile> removed, PlotFile added) {
+        for (List<PlotFile> plots : plotsByFolder.values()) {
+            plots.removeAll(removed);
+        }
+        if (added != null) {
+            List<PlotFile> plots = plotsByFolder.computeIfAbsent(
+                    added.getFolder().getAbsoluteFile(), folder -> new ArrayList<>());
+            plots.add(added);
+            plots.sort(BY_START_NONCE);
+        }
+    }
+}
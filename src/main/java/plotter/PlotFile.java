@@ -0,0 +1,157 @@
+/*
+ * Description: A plot file and the nonces written inside it
+ * License: Apache-2.0
+ */
+package plotter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Plot files are named numericId_startNonce_nonces, nonces are unsigned
+ * 64 bit values.
+ */
+public class PlotFile {
+
+    public static final long BYTES_OF_A_NONCE = 262144L;
+    private static final Pattern NAME = Pattern.compile("(\\d+)_(\\d+)_(\\d+)");
+
+    private final File file;
+    private final String numericId;
+    private final long startNonce;
+    private final long nonces;
+
+    public PlotFile(File folder, String numericId, long startNonce, long nonces) {
+        this.file = new File(folder, getName(numericId, startNonce, nonces));
+        this.numericId = numericId;
+        this.startNonce = startNonce;
+        this.nonces = nonces;
+    }
+
+    private PlotFile(String numericId, long startNonce, long nonces, File file) {
+        this.file = file;
+        this.numericId = numericId;
+        this.startNonce = startNonce;
+        this.nonces = nonces;
+    }
+
+    /**
+     * Reads the nonces from the name of a file
+     * @param file any file
+     * @return null when the name is not the one of a plot file
+     */
+    public static PlotFile parse(File file) {
+        Matcher matcher = NAME.matcher(file.getName());
+        if (!matcher.matches()) {
+            return null;
+        }
+        try {
+            return new PlotFile(matcher.group(1),
+                    Long.parseUnsignedLong(matcher.group(2)),
+                    Long.parseUnsignedLong(matcher.group(3)), file);
+        } catch (NumberFormatException ex) {
+            // bigger than 64 bits
+            return null;
+        }
+    }
+
+    public static String getName(String numericId, long startNonce, long nonces) {
+        return numericId + "_" + Long.toUnsignedString(startNonce) + "_" + Long.toUnsignedString(nonces);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public File getFolder() {
+        return file.getParentFile();
+    }
+
+    public String getNumericId() {
+        return numericId;
+    }
+
+    public long getStartNonce() {
+        return startNonce;
+    }
+
+    public long getNonces() {
+        return nonces;
+    }
+
+    /**
+     * @return the first nonce after this plot
+     */
+    public long getEndNonce() {
+        return startNonce + nonces;
+    }
+
+    /**
+     * @return the size that the file has when complete
+     */
+    public long getSize() {
+        return nonces * BYTES_OF_A_NONCE;
+    }
+
+    /**
+     * Is the file finished? It must have the size of all its nonces and no
+     * progress marker at the end, which the plotter only leaves on files
+     * that are still being written.
+     * @return false when the file is missing, partial or unreadable
+     */
+    public boolean isComplete() {
+        if (file.length() != getSize()) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < 8) {
+                return true;
+            }
+            raf.seek(raf.length() - 4);
+            byte[] magic = new byte[4];
+            raf.readFully(magic);
+            return !(magic[0] == -81 && magic[1] == -2 && magic[2] == -81 && magic[3] == -2);
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Does this plot hold all the nonces of the other one?
+     * @param other another plot of the same account
+     * @return true when the range of the other is inside this one
+     */
+    public boolean contains(PlotFile other) {
+        return Long.compareUnsigned(startNonce, other.startNonce) <= 0
+                && Long.compareUnsigned(other.getEndNonce(), getEndNonce()) <= 0;
+    }
+
+    /**
+     * Do both plots share at least one nonce?
+     * @param startNonce first nonce of the other range
+     * @param nonces size of the other range
+     * @return true when the ranges overlap
+     */
+    public boolean overlaps(long startNonce, long nonces) {
+        return Long.compareUnsigned(startNonce, getEndNonce()) < 0
+                && Long.compareUnsigned(this.startNonce, startNonce + nonces) < 0;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof PlotFile && ((PlotFile) obj).file.equals(file);
+    }
+
+    @Override
+    public int hashCode() {
+        return file.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return file.getName();
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Description: Joins plot files with adjacent nonces into one bigger file
+ * License: Apache-2.0
+ */
+package plotter;
+
+import static core.Global.logger;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import jobs.JobContext;
+import jobs.JobExecutor;
+import jobs.JobHandle;
+import jobs.JobType;
+import utils.IOarbiter;
+
+/**
+ * Plotting through an SSD cache leaves many small files on each disk and the
+ * miner pays one seek and one open for each of them on every round. Files
+ * of the same folder whose nonces follow each other are joined into one
+ * PoC2 file with the same nonces.
+ *
+ * The new file is written under a temporary name (".merging") that neither
+ * the miner nor the plotter recognize, and only renamed when complete. The
+ * small files are deleted after the rename. An interrupted merge leaves
+ * either the temporary file, which is removed, or the merged file next to
+ * some of the small ones, which are removed too because the merged file
+ * already holds their nonces.
+ */
+public class PlotMerger {
+
+    private static final String MERGING = ".merging";
+    private static final int SCOOPS_PER_NONCE = 4096;
+    private static final int SCOOP_SIZE = 64;
+
+    private final PlotCatalog catalog;
+    private IOarbiter arbiter;
+    private long maxMergedNonces = Long.MAX_VALUE;
+
+    public PlotMerger(PlotCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Pauses the merge while the miner reads the same disk
+     * @param arbiter the arbiter also given to the miner
+     */
+    public void setArbiter(IOarbiter arbiter) {
+        this.arbiter = arbiter;
+    }
+
+    /**
+     * @param maxMergedNonces largest number of nonces in a merged file
+     */
+    public void setMaxMergedNonces(long maxMergedNonces) {
+        this.maxMergedNonces = Math.max(1, maxMergedNonces);
+    }
+
+    /**
+     * Finds the complete plots of a folder whose nonces follow each other.
+     * The merged file is a full copy of its group until the small files are
+     * deleted, so a group is never bigger than the free space of the folder.
+     * @param folder a folder of the catalog
+     * @return groups of two or more plots, each one sorted by nonce
+     */
+    public List<List<PlotFile>> findGroups(File folder) {
+        List<List<PlotFile>> groups = new ArrayList<>();
+        List<PlotFile> group = new ArrayList<>();
+        long groupNonces = 0;
+        long maxNonces = Math.min(maxMergedNonces, folder.getUsableSpace() / PlotFile.BYTES_OF_A_NONCE);
+        for (PlotFile plot : catalog.getPlots(folder)) {
+            boolean adjacent = !group.isEmpty()
+                    && group.get(group.size() - 1).getEndNonce() == plot.getStartNonce()
+                    && groupNonces + plot.getNonces() <= maxNonces;
+            if (!adjacent) {
+                if (group.size() > 1) {
+                    groups.add(group);
+                }
+                group = new ArrayList<>();
+                groupNonces = 0;
+            }
+            if (plot.isComplete()) {
+                group.add(plot);
+                groupNonces += plot.getNonces();
+            } else {
+                // unfinished plots break the sequence
+                if (group.size() > 1) {
+                    groups.add(group);
+                }
+                group = new ArrayList<>();
+                groupNonces = 0;
+            }
+        }
+        if (group.size() > 1) {
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    /**
+     * Cleans what an interrupted merge left behind in a folder
+     * @param folder a folder of the catalog
+     */
+    public void recover(File folder) {
+        File[] leftovers = folder.listFiles((dir, name) -> name.endsWith(MERGING));
+        if (leftovers != null) {
+            for (File leftover : leftovers) {
+                logger.info("Deleting unfinished merge '" + leftover.getName() + "'");
+                leftover.delete();
+            }
+        }
+        List<PlotFile> plots = catalog.getPlots(folder);
+        List<PlotFile> covered = new ArrayList<>();
+        for (PlotFile plot : plots) {
+            for (PlotFile other : plots) {
+                if (other != plot && other.contains(plot) && other.getNonces() > plot.getNonces()
+                        && other.isComplete()) {
+                    covered.add(plot);
+                    break;
+                }
+            }
+        }
+        for (PlotFile plot : covered) {
+            logger.info("Deleting '" + plot + "', its nonces are inside a merged plot");
+            plot.getFile().delete();
+        }
+        catalog.replace(covered, null);
+    }
+
+    /**
+     * Joins a group of plots. For each scoop the region of every plot is
+     * copied in turn, so the new file is written from start to end.
+     * @param group adjacent plots of the same folder, sorted by nonce
+     * @param context to report progress and stop when cancelled
+     * @return the merged plot
+     * @throws IOException when the disk fails or has no space left
+     * @throws InterruptedException when the job was cancelled while waiting
+     */
+    public PlotFile merge(List<PlotFile> group, JobContext context) throws IOException, InterruptedException {
+        PlotFile first = group.get(0);
+        File folder = first.getFolder();
+        long total = 0;
+        for (PlotFile plot : group) {
+            total += plot.getNonces();
+        }
+        PlotFile merged = new PlotFile(folder, first.getNumericId(), first.getStartNonce(), total);
+        if (folder.getUsableSpace() < merged.getSize()) {
+            throw new IOException("Not enough space to merge into " + merged);
+        }
+
+        logger.info("Merging " + group.size() + " plots into '" + merged + "'");
+        Path partial = new File(folder, merged.getFile().getName() + MERGING).toPath();
+        List<FileChannel> inputs = new ArrayList<>();
+        try (FileChannel out = FileChannel.open(partial, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            for (PlotFile plot : group) {
+                inputs.add(FileChannel.open(plot.getFile().toPath(), StandardOpenOption.READ));
+            }
+            long scoopRegion = total * SCOOP_SIZE;
+            for (int scoop = 0; scoop < SCOOPS_PER_NONCE; scoop++) {
+                context.checkCancelled();
+                for (int i = 0; i < group.size(); i++) {
+                    FileChannel in = inputs.get(i);
+                    long region = group.get(i).getNonces() * SCOOP_SIZE;
+                    long start = scoop * region;
+                    if (arbiter != null) {
+                        arbiter.write(folder, region, (offset, length) -> in.transferTo(start + offset, length, out));
+                        continue;
+                    }
+                    long position = start;
+                    long end = position + region;
+                    while (position < end) {
+                        position += in.transferTo(position, end - position, out);
+                    }
+                }
+                context.setProgress((scoop + 1) * scoopRegion, merged.getSize());
+            }
+            out.force(true);
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            Files.deleteIfExists(partial);
+            throw ex;
+        } finally {
+            for (FileChannel in : inputs) {
+                in.close();
+            }
+        }
+
+        Files.move(partial, merged.getFile().toPath(), StandardCopyOption.ATOMIC_MOVE);
+        catalog.replace(group, merged);
+        for (PlotFile plot : group) {
+            plot.getFile().delete();
+        }
+        return merged;
+    }
+
+    /**
+     * Merges everything that can be merged in a folder, as a job
+     * @param folder a folder of the catalog
+     * @return the job, completes with the new plots
+     */
+    public JobHandle<List<PlotFile>> mergeFolder(File folder) {
+        return JobExecutor.getDefault().submit("merging " + folder.getName(), JobType.MERGE, context -> {
+            recover(folder);
+            List<PlotFile> merged = new ArrayList<>();
+            for (List<PlotFile> group : findGroups(folder)) {
+                try {
+                    merged.add(merge(group, context));
+                } catch (IOException ex) {
+                    logger.error("Failed to merge plots in " + folder.getAbsolutePath() + ": " + ex.getMessage());
+                }
+            }
+            return merged;
+        });
+    }
+}
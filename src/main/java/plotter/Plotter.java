@@ -8,17 +8,35 @@ import static core.Global.logger;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import jobs.Job;
+import jobs.JobContext;
+import jobs.JobExecutor;
+import jobs.JobHandle;
+import jobs.JobType;
+import metrics.Metrics;
+import utils.CPUgovernor;
+import utils.IOarbiter;
 import utils.NumberFormatting;
+import utils.OSValidator;
 
 /**
  * Date: 2021-09-21
@@ -32,11 +50,15 @@ public class Plotter {
     private File folderPlot; // where we store the plots
     private boolean lowPriorityCheck = true;
     private int cpusToPlot = 2;
+    private CPUgovernor governor;
+    private IOarbiter arbiter;
     private final String numericId;
     private long plotFileSize;
 
     private static final long ONE_GIB = 1073741824L;
     private static final long BYTES_OF_A_NONCE = 262144L;
+    private static final long MOVE_BLOCK_SIZE = 64L * 1024 * 1024;
+    private static final int COMPLETE_ATTEMPTS = 5;
     private static final String TMP_DIR = System.getProperty("java.io.tmpdir");
 
     /**
@@ -46,33 +68,73 @@ public class Plotter {
      */
     public Plotter(String numericId) {
         this.numericId = numericId;
+        this.catalog = new PlotCatalog(numericId);
     }
 
-    private boolean plotting;
+    private final AtomicBoolean plotting = new AtomicBoolean();
+    private volatile JobHandle<Void> plotJob;
     private AtomicReference<Long> noncesPlotted = new AtomicReference<>();
     private long totalToPlot;
     private final ArrayList<File> pathList = new ArrayList<>();
+    private final PlotCatalog catalog;
     private ArrayList<File> newPlotFiles = new ArrayList<>();
     private ArrayList<File> resumePlotFiles = new ArrayList<>();
-    private Process plotterProcess;
+    private volatile Process plotterProcess;
+    // files and cache moves of the current plot job
+    private final CopyOnWriteArrayList<File> jobFiles = new CopyOnWriteArrayList<>();
+    private final List<JobHandle<Void>> jobMoves = new CopyOnWriteArrayList<>();
 
-    // get only the files related to this numeric Id
+    private static final LongAdder NONCES_PLOTTED = Metrics.counter("plotter_nonces_total");
+    private static final AtomicLong MOVES_PENDING = Metrics.gauge("plotter_cache_moves_pending");
+
+    // get only the files related to this numeric Id, skipping copies in progress (".moving")
     private final FileFilter PLOT_FILE_FILTER = new FileFilter() {
         @Override
         public boolean accept(File pathname) {
             return pathname.isFile()
-                    && pathname.getName().startsWith(numericId)
-                    && pathname.getName().split("_").length == 3;
+                    && pathname.getName().startsWith(numericId + "_")
+                    && pathname.getName().matches("\\d+_\\d+_\\d+");
         }
     };
 
     public String formatSpace(double bytes) {
-        bytes /= ONE_GIB;
-        if (bytes < 500) {
-            return NumberFormatting.SIGNA_2.format(bytes) + " GiB";
+        return formatSpace((long) bytes);
+    }
+
+    public String formatSpace(long bytes) {
+        return formatSpace(bytes, new StringBuilder(16)).toString();
+    }
+
+    /**
+     * Appends a size in GiB, or in TiB from 500 GiB on, with 2 decimals
+     * @param bytes the size
+     * @param out where the text is appended
+     * @return the same builder
+     */
+    public StringBuilder formatSpace(long bytes, StringBuilder out) {
+        if (bytes < 500 * ONE_GIB) {
+            return NumberFormatting.SIGNA_2.formatTo(bytes, ONE_GIB, out).append(" GiB");
+        }
+        return NumberFormatting.SIGNA_2.formatTo(bytes, ONE_GIB * 1024, out).append(" TiB");
+    }
+
+    /**
+     * Updates the number of nonces plotted and the metrics of the disk
+     * @param total nonces plotted since we started
+     * @param fileBeingPlot the file receiving the nonces
+     */
+    private void updateNoncesPlotted(long total, File fileBeingPlot) {
+        long previous = noncesPlotted.getAndSet(total);
+        if (total > previous) {
+            long delta = total - previous;
+            NONCES_PLOTTED.add(delta);
+            Metrics.counter("plotter_bytes_written_total", "disk", fileBeingPlot.getParent())
+                    .add(delta * BYTES_OF_A_NONCE);
+        }
+        JobHandle<Void> job = plotJob;
+        if (job != null) {
+            job.setProgress(total * BYTES_OF_A_NONCE, totalToPlot);
         }
-        bytes /= 1024;
-        return NumberFormatting.SIGNA_2.format(bytes) + " TiB";
     }
 
     public long getPercentPlotted() {
@@ -139,21 +201,21 @@ public class Plotter {
      * Create the plot file
      * @param plotFileSize capacity of bytes that will be written
      * @param folderPlot where we store the plots that are generated
+     * @return the plotting job, null when nothing was started
      */
     @SuppressWarnings("CallToPrintStackTrace")
-    public void startPlotting(long plotFileSize, File folderPlot) {
+    public JobHandle<Void> startPlotting(long plotFileSize, File folderPlot) {
         // assign the variables
         this.plotFileSize = plotFileSize;
         this.folderPlot = folderPlot;
         
-        if (plotting) {
+        if (!plotting.compareAndSet(false, true)) {
             logger.error("Plotter is already running");
-            return;
+            return null;
         }
 
         logger.info("Started plotting");
         noncesPlotted.set(0L);
-        plotting = true;
 
         // Start nonce is random and we leave still enough bits for many PiB of unique nonces.
         // This way the user can disconnect disks and plot later or can use it on multiple machines.
@@ -162,73 +224,348 @@ public class Plotter {
         ByteBuffer bb = ByteBuffer.wrap(entropy);
         long startNonce = (bb.getShort() & 0x0FFF) * 100000000000000L;
 
-//        for (File path : pathList) 
-//            
-//            if (path == null) {
-//                continue;
-//            }
-//
-//            File[] plotFiles = path.listFiles(PLOT_FILE_FILTER);
-//            for (File plot : plotFiles) {
-//                String pieces[] = plot.getName().split("_");
-//                long start = Long.parseUnsignedLong(pieces[1]);
-//                long nonces = Long.parseUnsignedLong(pieces[2]);
-//                startNonce = Math.max(startNonce, start + nonces);
-//        }
-//        logger.info("Start nonce is: " + startNonce);
-//        newPlotFiles.clear();
-//        for (int i = 0; i < pathList.size(); i++) {
-//            File path = pathList.get(i);
-//            if (path == null) {
-//                continue;
-//            }
-//
-//            long freeSpace = path.getUsableSpace();
-//
-//            //long diskSpaceToUseWithPlots = freeSpace / 100 * fractionToPlotSliders.get(i).getValue();
-//
-//            long noncesToAdd = plotFileSize / BYTES_OF_A_NONCE;
-//            if (noncesToAdd == 0) {
-//                continue;
-//            }
-//
-//            String newPlot = numericId + "_" + startNonce + "_" + noncesToAdd;
-//            newPlotFiles.add(new File(path, newPlot));
-//            logger.info("Added file to plot: " + newPlot);
-//
-//            startNonce += noncesToAdd + 1;
-//        }
-//
-//        if (newPlotFiles.isEmpty() && resumePlotFiles.isEmpty()) {
-//            plotting = false;
-//            return;
-//        }
-//
-//        String plotterName = "signum-plotter";
-//        if (OSValidator.IS_WINDOWS) {
-//            plotterName += ".exe";
-//        } else if (OSValidator.IS_MAC) {
-//            plotterName += ".app";
-//        }
-//
-//        plotterUtilityFile = new File(TMP_DIR, plotterName);
-//        if (!plotterUtilityFile.exists() || plotterUtilityFile.length() == 0) {
-//            InputStream link = (getClass().getResourceAsStream("/plotter/" + plotterName));
-//            try {
-//                logger.info("Copying plotter to: " + plotterUtilityFile.getAbsolutePath());
-//                Files.copy(link, plotterUtilityFile.getAbsoluteFile().toPath());
-//                if (!OSValidator.IS_WINDOWS) {
-//                    plotterUtilityFile.setExecutable(true);
-//                }
-//            } catch (IOException ex) {
-//                ex.printStackTrace();
-//                plotting = false;
-//                return;
-//            }
-//        }
-//
-//        PlotThread plotThread = new PlotThread();
-//        plotThread.start();
+        newPlotFiles.clear();
+        long noncesToAdd = plotFileSize / BYTES_OF_A_NONCE;
+        if (noncesToAdd > 0) {
+            String newPlot = numericId + "_" + startNonce + "_" + noncesToAdd;
+            newPlotFiles.add(new File(folderPlot, newPlot));
+            logger.info("Added file to plot: " + newPlot);
+        }
+        return submitPlotJob();
+    }
+
+    /**
+     * Registers a folder (usually one per disk) to be filled with plots
+     * @param folder where plots are stored
+     */
+    public void addPlotFolder(File folder) {
+        pathList.add(folder);
+        catalog.addFolder(folder);
+    }
+
+    /**
+     * @return the plots of this account found on the registered folders
+     */
+    public PlotCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Joins the small plot files left by the SSD cache into bigger ones
+     * @param folder a registered folder
+     * @return the job, completes with the new plots
+     */
+    public JobHandle<List<PlotFile>> mergePlots(File folder) {
+        catalog.refresh();
+        PlotMerger merger = new PlotMerger(catalog);
+        merger.setArbiter(arbiter);
+        return merger.mergeFolder(folder);
+    }
+
+    /**
+     * Proposes new plot files filling the free space of every registered
+     * folder, nothing is written. Use getReport() for a dry run.
+     * @param planner decides the alignment and the size of the files
+     * @return the plan, with start nonces that do not overlap existing plots
+     */
+    public CapacityPlan planPlotting(CapacityPlanner planner) {
+        catalog.refresh();
+        CapacityPlan plan = planner.plan(catalog, getNonceInitial(folderPlot));
+        logger.info("Plotting plan:\n" + plan.getReport());
+        return plan;
+    }
+
+    /**
+     * Plots all the files of a plan
+     * @param plan made by planPlotting
+     * @return the plotting job, null when nothing was started
+     */
+    public JobHandle<Void> startPlotting(CapacityPlan plan) {
+        if (!plotting.compareAndSet(false, true)) {
+            logger.error("Plotter is already running");
+            return null;
+        }
+        logger.info("Started plotting");
+        noncesPlotted.set(0L);
+
+        newPlotFiles.clear();
+        for (PlotFile plot : plan.getFiles()) {
+            newPlotFiles.add(plot.getFile());
+            logger.info("Added file to plot: " + plot.getFile().getName());
+        }
+        return submitPlotJob();
+    }
+
+    /**
+     * Plots ranges of nonces leased from a coordinator, so that many
+     * machines fill the same account without overlapping. Each lease is
+     * plotted to its own file, a lease that is lost (the heartbeat is
+     * refused) is stopped and its files deleted, since the coordinator
+     * gives the range to another worker.
+     * @param client connected to the coordinator
+     * @param folder where the plots are stored
+     * @param noncesPerLease size of the ranges asked
+     * @param maxLeases number of leases to plot, 0 to plot until cancelled
+     * @return the job, completes with the nonces plotted, null when already plotting
+     */
+    public JobHandle<Long> startPlotting(NonceLeaseClient client, File folder, long noncesPerLease, int maxLeases) {
+        if (plotting.get()) {
+            logger.error("Plotter is already running");
+            return null;
+        }
+        this.folderPlot = folder;
+        return JobExecutor.getDefault().submit("leased plotting " + numericId, JobType.PLOT, context -> {
+            context.onCancel(this::stopPlotting);
+            long plotted = 0;
+            for (int leases = 0; (maxLeases == 0 || leases < maxLeases) && !context.isCancelled(); leases++) {
+                NonceLease lease = client.lease(numericId, noncesPerLease);
+                if (plotLease(client, lease, folder, context)) {
+                    plotted += lease.getNonces();
+                }
+            }
+            return plotted;
+        });
+    }
+
+    /**
+     * @return true when the lease was plotted and reported complete
+     */
+    @SuppressWarnings("SleepWhileInLoop")
+    private boolean plotLease(NonceLeaseClient client, NonceLease lease, File folder, JobContext context)
+            throws IOException, InterruptedException {
+        logger.info("Plotting lease " + lease);
+        long heartbeatMillis = Math.max(1000, (lease.getExpiresAtMillis() - System.currentTimeMillis()) / 3);
+
+        File leaseFile = lease.toPlotFile(folder).getFile();
+        if (leaseFile.exists() || (ssdPath != null && new File(ssdPath, leaseFile.getName()).exists())) {
+            // never touch a plot that we did not write for this lease
+            client.release(lease);
+            throw new IOException("Plot of the lease already exists: " + leaseFile);
+        }
+        if (!plotting.compareAndSet(false, true)) {
+            client.release(lease);
+            throw new IOException("Plotter is already running");
+        }
+        noncesPlotted.set(0L);
+        newPlotFiles.clear();
+        newPlotFiles.add(leaseFile);
+
+        JobHandle<Void> job = null;
+        boolean lost = false;
+        boolean completed = false;
+        // complete() was sent but never answered, the plot is kept
+        boolean unknown = false;
+        try {
+            job = submitPlotJob();
+            if (job == null) {
+                throw new IOException("Plotter could not be started");
+            }
+
+            long nextHeartbeat = System.currentTimeMillis() + heartbeatMillis;
+            while (!job.isDone()) {
+                Thread.sleep(500);
+                if (System.currentTimeMillis() < nextHeartbeat) {
+                    continue;
+                }
+                try {
+                    if (!client.heartbeat(lease, noncesPlotted.get())) {
+                        logger.error("Lease lost, stopping: " + lease);
+                        lost = true;
+                        return false;
+                    }
+                } catch (IOException ex) {
+                    // keep plotting, the lease only expires after missing a few heartbeats
+                    logger.error("Heartbeat failed: " + ex.getMessage());
+                }
+                nextHeartbeat = System.currentTimeMillis() + heartbeatMillis;
+            }
+            awaitQuietly(job);
+
+            if (context.isCancelled() || noncesPlotted.get() < lease.getNonces()) {
+                return false;
+            }
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    // safe to repeat, the coordinator answers the same for a completed lease
+                    completed = client.complete(lease);
+                    unknown = false;
+                    break;
+                } catch (IOException ex) {
+                    // the coordinator may have counted it, deleting the plot would lose the range
+                    unknown = true;
+                    logger.error("Failed to complete lease " + lease.getId() + ": " + ex.getMessage());
+                    if (attempt == COMPLETE_ATTEMPTS) {
+                        logger.error("Keeping the plot of lease " + lease + ", its completion is unknown");
+                        return false;
+                    }
+                    Thread.sleep(heartbeatMillis);
+                }
+            }
+            if (!completed) {
+                logger.error("Lease expired before completing: " + lease);
+                lost = true;
+            }
+            return completed;
+        } finally {
+            if (!completed && !unknown) {
+                // the range goes to another worker, nothing of it may stay here
+                if (job != null) {
+                    job.cancel();
+                    awaitQuietly(job);
+                }
+                if (!lost) {
+                    try {
+                        client.release(lease);
+                    } catch (IOException ex) {
+                        logger.error("Failed to release lease " + lease.getId() + ": " + ex.getMessage());
+                    }
+                }
+                deleteLeasePlots(lease);
+            }
+        }
+    }
+
+    private static void awaitQuietly(JobHandle<?> job) {
+        // until the job really returned, its future may be cancelled earlier
+        boolean interrupted = false;
+        while (true) {
+            try {
+                job.awaitStopped();
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Deletes the files written for a lease, on the folder and the cache,
+     * after stopping the moves that are still copying them
+     */
+    private void deleteLeasePlots(NonceLease lease) {
+        for (JobHandle<Void> move : jobMoves) {
+            move.cancel();
+            awaitQuietly(move);
+        }
+        for (File plot : jobFiles) {
+            logger.info("Deleting plot of lease " + lease.getId() + ": " + plot.getName());
+            plot.delete();
+            new File(plot.getPath() + ".moving").delete();
+        }
+    }
+
+    /**
+     * Plots the new files and resumes the unfinished ones
+     * @return the plotting job, null when nothing was started
+     */
+    private JobHandle<Void> submitPlotJob() {
+        if (newPlotFiles.isEmpty() && resumePlotFiles.isEmpty()) {
+            plotting.set(false);
+            return null;
+        }
+
+        jobFiles.clear();
+        jobMoves.clear();
+        totalToPlot = 0;
+        for (File plot : newPlotFiles) {
+            totalToPlot += Long.parseLong(plot.getName().split("_")[2]) * BYTES_OF_A_NONCE;
+            plot.getParentFile().mkdirs();
+        }
+        for (File plot : resumePlotFiles) {
+            totalToPlot += Long.parseLong(plot.getName().split("_")[2]) * BYTES_OF_A_NONCE;
+        }
+
+        if (!extractPlotter()) {
+            plotting.set(false);
+            return null;
+        }
+
+        plotJob = JobExecutor.getDefault().submit("plotting " + numericId, JobType.PLOT, new PlotJob());
+        return plotJob;
+    }
+
+    /**
+     * Copies the plotter for this operating system to the temporary folder
+     * @return false when there is no plotter for this system
+     */
+    @SuppressWarnings("CallToPrintStackTrace")
+    private boolean extractPlotter() {
+        String plotterName = "signum-plotter";
+        if (OSValidator.IS_WINDOWS) {
+            plotterName += ".exe";
+        } else if (OSValidator.IS_MAC) {
+            plotterName += ".app";
+        }
+
+        plotterUtilityFile = new File(TMP_DIR, plotterName);
+        if (!plotterUtilityFile.exists() || plotterUtilityFile.length() == 0) {
+            InputStream link = (getClass().getResourceAsStream("/plotter/" + plotterName));
+            if (link == null) {
+                logger.error("No plotter available for this system: " + plotterName);
+                return false;
+            }
+            try {
+                logger.info("Copying plotter to: " + plotterUtilityFile.getAbsolutePath());
+                Files.copy(link, plotterUtilityFile.getAbsoluteFile().toPath(), StandardCopyOption.REPLACE_EXISTING);
+                if (!OSValidator.IS_WINDOWS) {
+                    plotterUtilityFile.setExecutable(true);
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops plotting. Unfinished files are kept when the plotter can resume
+     * them later, otherwise deleted.
+     */
+    public void stopPlotting() {
+        JobHandle<Void> job = plotJob;
+        if (job != null) {
+            job.cancel();
+        }
+    }
+
+    /**
+     * The job that is plotting right now
+     * @return null when nothing was started
+     */
+    public JobHandle<Void> getPlotJob() {
+        return plotJob;
+    }
+
+    /**
+     * Checks the plot files of a folder: a finished plot has the size that
+     * its name says and no progress marker at the end.
+     * @param folder where the plots are stored
+     * @return the job, completes with the list of plots that are incomplete
+     */
+    public JobHandle<List<File>> verifyPlots(File folder) {
+        return JobExecutor.getDefault().submit("verifying " + folder.getName(), JobType.VERIFY, context -> {
+            List<File> damaged = new ArrayList<>();
+            File[] plots = folder.listFiles(PLOT_FILE_FILTER);
+            if (plots == null) {
+                return damaged;
+            }
+            for (int i = 0; i < plots.length; i++) {
+                context.checkCancelled();
+                context.setProgress(i, plots.length);
+                File plot = plots[i];
+                long nonces = Long.parseUnsignedLong(plot.getName().split("_")[2]);
+                if (plot.length() != nonces * BYTES_OF_A_NONCE || getPlotProgress(plot) >= 0) {
+                    logger.info("Plot is incomplete: " + plot.getName());
+                    damaged.add(plot);
+                }
+            }
+            context.setProgress(plots.length, plots.length);
+            return damaged;
+        });
     }
 
     @SuppressWarnings("CallToPrintStackTrace")
@@ -236,20 +573,79 @@ public class Plotter {
 //        
     }
 
+    /**
+     * Lets a governor decide how many cores are used for plotting. The
+     * plotter is restarted (resuming the same file) when the number changes
+     * and stays paused while the governor gives all the cores to mining.
+     * @param governor the governor also given to the miner, null to always
+     * use the fixed number of cores
+     */
+    public void setGovernor(CPUgovernor governor) {
+        this.governor = governor;
+    }
+
+    /**
+     * Pauses plot writes and cache moves on the disks that the miner is
+     * reading, the plotter is restarted (resuming the same file) when the
+     * scan ends.
+     * @param arbiter the arbiter also given to the miner, null to never pause
+     */
+    public void setArbiter(IOarbiter arbiter) {
+        this.arbiter = arbiter;
+    }
+
+    /**
+     * Gets the number of cores for the next plotter run, waiting while the
+     * governor wants the plotter paused or the miner reads the disk.
+     * @param folder where the plotter will write
+     * @return zero when plotting was stopped while waiting
+     */
+    @SuppressWarnings("SleepWhileInLoop")
+    private int waitToPlot(File folder) throws InterruptedException {
+        if (arbiter != null && arbiter.isBeingScanned(folder)) {
+            logger.info("Plotting paused while the miner reads '" + arbiter.getDevice(folder) + "'");
+            arbiter.awaitWriteAllowed(folder);
+        }
+        if (governor == null) {
+            return cpusToPlot;
+        }
+        int cpus = governor.getCpusToPlot();
+        if (cpus == 0) {
+            logger.info("Plotting paused while the miner reads the disks");
+        }
+        while (cpus == 0 && plotting.get()) {
+            Thread.sleep(500);
+            cpus = governor.getCpusToPlot();
+        }
+        return plotting.get() ? cpus : 0;
+    }
+
+    /**
+     * Should the running plotter be stopped, to be started again later?
+     * @param cpus number of cores the plotter is running with
+     * @param folder where the plotter is writing
+     * @return true when the cores changed or the disk is being read
+     */
+    private boolean mustYield(int cpus, File folder) {
+        return (governor != null && governor.getCpusToPlot() != cpus)
+                || (arbiter != null && arbiter.isBeingScanned(folder));
+    }
+
     /**
      * Are we plotting right now?
      *
      * @return true when a plotting operation is in progress, false otherwise
      */
     public boolean isPlotting() {
-        return plotting;
+        return plotting.get();
     }
 
-    class PlotThread extends Thread {
+    class PlotJob implements Job<Void> {
 
         @Override
         @SuppressWarnings({"CallToPrintStackTrace", "SleepWhileInLoop"})
-        public void run() {
+        public Void run(JobContext context) {
+            context.onCancel(() -> plotting.set(false));
             long noncesFinished = 0;
             logger.info("Plotting started for a total of " + formatSpace(totalToPlot) + ", this can be a long process...");
 
@@ -273,6 +669,9 @@ public class Plotter {
             filesToPlot.addAll(newPlotFiles);
 
             for (File plot : filesToPlot) {
+                if (!plotting.get()) {
+                    break;
+                }
                 if (resumePlotFiles.contains(plot)) {
                     logger.info("Resuming plot file '" + plot.getName() + "'");
                 }
@@ -302,11 +701,11 @@ public class Plotter {
                                 Thread.sleep(10000);
                             } catch (InterruptedException e) {
                                 e.printStackTrace();
-                                plotting = false;
+                                plotting.set(false);
                             }
-                            if (!plotting) {
+                            if (!plotting.get()) {
                                 logger.info("Stopped");
-                                return;
+                                return null;
                             }
                             freeCacheSpaceNow = ssdPath.getUsableSpace() / BYTES_OF_A_NONCE;
                         }
@@ -315,7 +714,6 @@ public class Plotter {
                     String cmd = plotterUtilityFile.getAbsolutePath() + " -i " + sections[0];
                     cmd += " -s " + nonceStart;
                     cmd += " -n " + noncesBeingPlot;
-                    cmd += " -c " + cpusToPlot;
                     cmd += " -q";
                     cmd += " -d"; // FIXME: enable back direct io, but we need to find out the sector size then and adjust no of nonces
                     if (lowPriorityCheck) {
@@ -325,24 +723,49 @@ public class Plotter {
                     logger.info("Plotting file '" + fileBeingPlot.getAbsolutePath() + "'");
 
                     try {
-                        plotterProcess = Runtime.getRuntime().exec(cmd, null, fileBeingPlot.getParentFile());
-
-                        long counter = 0;
-                        while (plotterProcess.isAlive()) {
-                            if (!plotting) {
-                                logger.info("Stopped");
-                                plotterProcess.destroyForcibly();
-                                if (getPlotProgress(fileBeingPlot) < 0) {
-                                    // delete the file, because we will not be able to resume it
-                                    fileBeingPlot.delete();
-                                }
+                        boolean restart = true;
+                        while (restart && plotting.get()) {
+                            restart = false;
+                            int cpus = waitToPlot(fileBeingPlot.getParentFile());
+                            if (cpus == 0) {
                                 break;
                             }
-                            counter++;
-                            Thread.sleep(100);
-                            if (counter % 300 == 0) {
-                                int partial = getPlotProgress(fileBeingPlot);
-                                noncesPlotted.set(noncesFinished + partial);
+                            long started = System.nanoTime();
+                            jobFiles.addIfAbsent(fileBeingPlot);
+                            plotterProcess = Runtime.getRuntime().exec(cmd + " -c " + cpus, null, fileBeingPlot.getParentFile());
+
+                            long counter = 0;
+                            while (plotterProcess.isAlive()) {
+                                if (!plotting.get()) {
+                                    logger.info("Stopped");
+                                    stopProcess(fileBeingPlot);
+                                    break;
+                                }
+                                counter++;
+                                Thread.sleep(100);
+                                if (counter % 300 == 0) {
+                                    int partial = getPlotProgress(fileBeingPlot);
+                                    if (partial > 0) {
+                                        updateNoncesPlotted(noncesFinished + partial, fileBeingPlot);
+                                    }
+                                }
+                                if (counter % 10 == 0 && mustYield(cpus, fileBeingPlot.getParentFile())) {
+                                    // stop and run again on the same file, the plotter resumes it
+                                    plotterProcess.destroyForcibly();
+                                    plotterProcess.waitFor();
+                                    if (plotterProcess.exitValue() == 0) {
+                                        // finished on its own before being stopped
+                                        break;
+                                    }
+                                    if (getPlotProgress(fileBeingPlot) < 0) {
+                                        fileBeingPlot.delete();
+                                    }
+                                    restart = true;
+                                    break;
+                                }
+                            }
+                            if (arbiter != null) {
+                                arbiter.recordWrite(fileBeingPlot.getParentFile(), System.nanoTime() - started);
                             }
                         }
                         // TODO: apparently for some systems this returns garbage, visit again later
@@ -351,33 +774,44 @@ public class Plotter {
 //							plotting = false;
 //							break;
 //						}
-                        if (!plotting) {
+                        if (!plotting.get()) {
                             break;
                         }
                         nonceStart += noncesBeingPlot;
                         noncesAlreadyPlotted += noncesBeingPlot;
                         noncesFinished += noncesBeingPlot;
+                        updateNoncesPlotted(noncesFinished, fileBeingPlot);
 
                         if (ssdPath != null) {
                             logger.info("Moving '" + fileBeingPlot.getName() + "' to '" + plot.getParent() + "'");
-                            moveFile(fileBeingPlot.toPath(), new File(plot.getParent(), fileBeingPlot.getName()).toPath());
+                            File target = new File(plot.getParent(), fileBeingPlot.getName());
+                            jobFiles.addIfAbsent(target);
+                            jobMoves.add(moveFile(fileBeingPlot.toPath(), target.toPath()));
                         }
-                    } catch (IOException | InterruptedException e) {
+                    } catch (InterruptedException e) {
+                        // cancelled while waiting
+                        logger.info("Stopped");
+                        plotting.set(false);
+                        stopProcess(fileBeingPlot);
+                        break;
+                    } catch (IOException e) {
                         e.printStackTrace();
                     }
                 }
             }
 
-            if (plotting) {
+            if (plotting.get()) {
                 logger.info("Plotting successfully finished! Be sure to stop and start the miner.");
             }
             if (ssdPath != null) {
                 logger.info("But your system might still be moving files from cache");
             }
 
-            plotting = false;
+            plotting.set(false);
             plotterUtilityFile.delete();
             resumePlotFiles.clear();
+            catalog.refresh();
+            return null;
 
             // Finished, so we reset all sliders
 //            SwingUtilities.invokeLater(() -> {
@@ -391,15 +825,98 @@ public class Plotter {
 
     };
 	
-	private void moveFile(Path source, Path target) {
-        Thread copyThread = new Thread(() -> {
+    /**
+     * Stops the plotter process, deleting the file when the plotter was
+     * killed here and the file can not be resumed. A plotter that already
+     * exited leaves a complete plot, without the resume marker.
+     * @param fileBeingPlot the file the plotter was writing
+     */
+    private void stopProcess(File fileBeingPlot) {
+        Process process = plotterProcess;
+        if (process == null || !process.isAlive()) {
+            return;
+        }
+        process.destroyForcibly();
+        boolean interrupted = false;
+        while (true) {
             try {
-                Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
-            } catch (IOException ex) {
-                ex.printStackTrace(System.err);
+                process.waitFor();
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (process.exitValue() == 0) {
+            // finished on its own before being killed
+            return;
+        }
+        if (getPlotProgress(fileBeingPlot) < 0) {
+            // delete the file, because we will not be able to resume it
+            fileBeingPlot.delete();
+        }
+    }
+
+	private JobHandle<Void> moveFile(Path source, Path target) {
+        MOVES_PENDING.incrementAndGet();
+        String disk = target.getParent().toString();
+        JobHandle<Void> move = JobExecutor.getDefault().submit("moving " + source.getFileName(), JobType.MOVE, context -> {
+            long started = System.nanoTime();
+            long size = Files.size(source);
+            try {
+                // same disk, nothing needs to be written
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                copyBlocks(source, target, context);
+                Files.delete(source);
+            }
+            Metrics.counter("plotter_bytes_moved_total", "disk", disk).add(size);
+            Metrics.timer("plotter_cache_move", "disk", disk).record(System.nanoTime() - started);
+            return null;
+        });
+        move.getFuture().whenComplete((result, ex) -> {
+            MOVES_PENDING.decrementAndGet();
+            if (ex != null && !move.isCancelled()) {
+                logger.error("Failed to move '" + source + "' to '" + disk + "'", ex);
             }
         });
-        copyThread.start();
+        return move;
+    }
+
+    /**
+     * Copies a plot to another disk in large blocks, asking the arbiter
+     * before each block. The copy gets its final name only when complete,
+     * so the miner never reads a partial plot.
+     */
+    private void copyBlocks(Path source, Path target, JobContext context) throws IOException, InterruptedException {
+        Path partial = target.resolveSibling(target.getFileName() + ".moving");
+        File folder = target.getParent().toFile();
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(partial, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                context.checkCancelled();
+                context.setProgress(position, size);
+                long block = Math.min(MOVE_BLOCK_SIZE, size - position);
+                if (arbiter != null) {
+                    // in small chunks while the miner reads this disk
+                    long start = position;
+                    arbiter.write(folder, block, (offset, length) -> in.transferTo(start + offset, length, out));
+                    position += block;
+                } else {
+                    position += in.transferTo(position, block, out);
+                }
+            }
+            out.force(true);
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            Files.deleteIfExists(partial);
+            throw ex;
+        }
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
     }
 
     @SuppressWarnings("CallToPrintStackTrace")
@@ -0,0 +1,219 @@
+/*
+ * Description: Measures how fast a farm of a given size is scanned
+ * License: Apache-2.0
+ */
+package simulation;
+
+import static core.Global.logger;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import jobs.JobHandle;
+import miner.Miner;
+import miner.RoundListener;
+import utils.NumberFormatting;
+
+/**
+ * Runs the miner against synthetic plots and a stand-in pool for many
+ * rounds, for every combination of number of disks and disk size, and
+ * reports scan time percentiles, submission latency and throughput.
+ *
+ * Example (Linux, with a signum-miner installed):
+ * java -cp ... simulation.ScanSimulator miner=/usr/local/bin/signum-miner
+ *      folder=/mnt/test disks=1,4,8 tib=1,8 rounds=20 block=30
+ */
+public class ScanSimulator {
+
+    private static final String NUMERIC_ID = "5505480724951664437";
+    private static final long BASE_TARGET = 18325193796L;
+    // the sparse plots read as zeros, all the nonces of a round hash to the
+    // same deadline (up to 2^64 / BASE_TARGET), accept any so every round submits
+    private static final long MAX_DEADLINE = Long.MAX_VALUE;
+
+    private final File minerExecutable;
+    private final File folder;
+    private final int rounds;
+    private final long blockMillis;
+    private int filesPerDisk = 1;
+
+    /**
+     * @param minerExecutable the signum-miner to run
+     * @param folder where the synthetic plots are created
+     * @param rounds rounds measured for each configuration
+     * @param blockMillis time between two blocks
+     */
+    public ScanSimulator(File minerExecutable, File folder, int rounds, long blockMillis) {
+        this.minerExecutable = minerExecutable;
+        this.folder = folder;
+        this.rounds = rounds;
+        this.blockMillis = blockMillis;
+    }
+
+    public void setFilesPerDisk(int filesPerDisk) {
+        this.filesPerDisk = Math.max(1, filesPerDisk);
+    }
+
+    /**
+     * Simulates one farm
+     * @param disks number of disks
+     * @param tibPerDisk size of each disk
+     * @return one line with the results
+     * @throws IOException when the plots can not be created
+     * @throws InterruptedException when the thread is interrupted
+     */
+    public String run(int disks, double tibPerDisk) throws IOException, InterruptedException {
+        List<File> folders = SyntheticPlots.create(folder, NUMERIC_ID, disks, tibPerDisk, filesPerDisk);
+        StandInPool pool = new StandInPool(NUMERIC_ID, MAX_DEADLINE, BASE_TARGET);
+        List<Long> scanMillis = new CopyOnWriteArrayList<>();
+        try {
+            String url = pool.start(blockMillis);
+            Miner.pool = url;
+            Miner miner = new Miner(url);
+            miner.setMinerExecutable(minerExecutable);
+            for (File disk : folders) {
+                miner.addMiningFolder(disk);
+            }
+            miner.addRoundListener(new RoundListener() {
+                @Override
+                public void roundStarted(long height) {
+                }
+
+                @Override
+                public void roundFinished(long millis) {
+                    scanMillis.add(millis);
+                }
+            });
+
+            long firstHeight = pool.getHeight();
+            JobHandle<Void> mining = miner.startMining();
+            if (mining == null) {
+                throw new IOException("Failed to start the miner");
+            }
+            long timeout = System.currentTimeMillis() + blockMillis * (rounds + 2) * 2;
+            while (scanMillis.size() < rounds && System.currentTimeMillis() < timeout
+                    && !mining.isDone()) {
+                Thread.sleep(1000);
+            }
+            miner.stopMining();
+            try {
+                mining.getFuture().get(30, TimeUnit.SECONDS);
+            } catch (ExecutionException | CancellationException ex) {
+                // stopped on purpose
+            } catch (TimeoutException ex) {
+                logger.error("The miner did not stop in time");
+            }
+
+            // first submission of each block, that is what decides if we win it
+            Map<Long, Long> firstLatency = new HashMap<>();
+            for (StandInPool.Submission submission : pool.getSubmissions()) {
+                if (submission.height > firstHeight) {
+                    firstLatency.merge(submission.height, submission.latencyMillis, Math::min);
+                }
+            }
+            return report(disks, tibPerDisk, scanMillis, new ArrayList<>(firstLatency.values()));
+        } finally {
+            pool.stop();
+            SyntheticPlots.delete(folders);
+        }
+    }
+
+    private String report(int disks, double tibPerDisk, List<Long> scans, List<Long> latencies) {
+        List<Long> sorted = new ArrayList<>(scans);
+        Collections.sort(sorted);
+        Collections.sort(latencies);
+        double tib = disks * tibPerDisk;
+        long median = percentile(sorted, 50);
+        String throughput = median > 0
+                ? NumberFormatting.SIGNA_2.format(tib * 1000 / median) + " TiB/s" : "n/a";
+        return "disks=" + disks
+                + " size=" + NumberFormatting.SIGNA_2.format(tib) + " TiB"
+                + " rounds=" + sorted.size()
+                + " scan p50/p90/p99=" + percentiles(sorted, 50, 90, 99)
+                + " submissions=" + latencies.size()
+                + " submit p50/p99=" + percentiles(latencies, 50, 99)
+                + " throughput=" + throughput;
+    }
+
+    /**
+     * @param sorted values sorted in ascending order
+     * @param percents the percentiles to show
+     * @return like "10/20 ms", "n/a" when there are no values
+     */
+    private static String percentiles(List<Long> sorted, double... percents) {
+        if (sorted.isEmpty()) {
+            return "n/a";
+        }
+        StringBuilder text = new StringBuilder();
+        for (double percent : percents) {
+            if (text.length() > 0) {
+                text.append('/');
+            }
+            text.append(percentile(sorted, percent));
+        }
+        return text.append(" ms").toString();
+    }
+
+    /**
+     * Nearest-rank percentile
+     * @param sorted values sorted in ascending order
+     * @param percent between 0 and 100
+     * @return zero when there are no values
+     */
+    static long percentile(List<Long> sorted, double percent) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percent / 100 * sorted.size());
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, rank - 1)));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        options.put("folder", System.getProperty("java.io.tmpdir"));
+        options.put("disks", "1,2,4");
+        options.put("tib", "1");
+        options.put("rounds", "10");
+        options.put("block", "30");
+        options.put("files", "1");
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals > 0) {
+                options.put(arg.substring(0, equals), arg.substring(equals + 1));
+            }
+        }
+        if (!options.containsKey("miner")) {
+            System.out.println("Usage: ScanSimulator miner=<signum-miner> [folder=<dir>] [disks=1,2,4]"
+                    + " [tib=1] [rounds=10] [block=<seconds>] [files=<per disk>]");
+            return;
+        }
+
+        File base = new File(options.get("folder"), "signum-simulation");
+        ScanSimulator simulator = new ScanSimulator(new File(options.get("miner")), base,
+                Integer.parseInt(options.get("rounds")),
+                TimeUnit.SECONDS.toMillis(Long.parseLong(options.get("block"))));
+        simulator.setFilesPerDisk(Integer.parseInt(options.get("files")));
+
+        List<String> results = new ArrayList<>();
+        for (String disks : options.get("disks").split(",")) {
+            for (String tib : options.get("tib").split(",")) {
+                String result = simulator.run(Integer.parseInt(disks.trim()), Double.parseDouble(tib.trim()));
+                logger.info(result);
+                results.add(result);
+            }
+        }
+        base.delete();
+        for (String result : results) {
+            System.out.println(result);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Description: A local pool that serves mining rounds to a simulated farm
+ * License: Apache-2.0
+ */
+package simulation;
+
+import static core.Global.logger;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers getConfig, getMiningInfo and submitNonce like a pool does, with a
+ * new block every few seconds. Every submission is recorded with the time
+ * passed since the block it was submitted for started, a late submission
+ * for an old block counts from the start of that block.
+ */
+public class StandInPool {
+
+    /**
+     * A deadline received by the pool
+     */
+    public static class Submission {
+
+        public final long height;
+        public final long deadline;
+        public final long latencyMillis;
+
+        Submission(long height, long deadline, long latencyMillis) {
+            this.height = height;
+            this.deadline = deadline;
+            this.latencyMillis = latencyMillis;
+        }
+    }
+
+    private final String poolAccount;
+    private final long maxDeadline;
+    private final long baseTarget;
+    private final SecureRandom random = new SecureRandom();
+    private final List<Submission> submissions = new ArrayList<>();
+
+    private HttpServer server;
+    private ScheduledExecutorService blocks;
+    private volatile long height = 1000;
+    private volatile String generationSignature;
+    // height -> System.nanoTime() when the block started
+    private final Map<Long, Long> blockStarts = new ConcurrentHashMap<>();
+
+    /**
+     * @param poolAccount numeric id the pool reports as its account
+     * @param maxDeadline largest deadline accepted
+     * @param baseTarget difficulty of the simulated network
+     */
+    public StandInPool(String poolAccount, long maxDeadline, long baseTarget) {
+        this.poolAccount = poolAccount;
+        this.maxDeadline = maxDeadline;
+        this.baseTarget = baseTarget;
+        nextBlock();
+    }
+
+    /**
+     * Starts serving on the loopback address
+     * @param blockMillis time between blocks
+     * @return the URL of the pool
+     * @throws IOException when no port is available
+     */
+    public synchronized String start(long blockMillis) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/getConfig", exchange -> {
+            JsonObject json = new JsonObject();
+            json.addProperty("poolAccount", poolAccount);
+            json.addProperty("maxDeadline", Long.toString(maxDeadline));
+            reply(exchange, json);
+        });
+        server.createContext("/burst", this::handleBurst);
+        server.start();
+
+        blocks = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stand-in-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        blocks.scheduleAtFixedRate(this::nextBlock, blockMillis, blockMillis, TimeUnit.MILLISECONDS);
+
+        String url = "http://127.0.0.1:" + server.getAddress().getPort();
+        logger.info("Stand-in pool running on " + url);
+        return url;
+    }
+
+    public synchronized void stop() {
+        if (blocks != null) {
+            blocks.shutdownNow();
+            blocks = null;
+        }
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    private void nextBlock() {
+        byte[] signature = new byte[32];
+        random.nextBytes(signature);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : signature) {
+            hex.append(String.format("%02x", b));
+        }
+        long next = height + 1;
+        blockStarts.put(next, System.nanoTime());
+        generationSignature = hex.toString();
+        height = next;
+    }
+
+    private void handleBurst(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String requestType = query.get("requestType");
+        JsonObject json = new JsonObject();
+        if ("getMiningInfo".equals(requestType)) {
+            json.addProperty("generationSignature", generationSignature);
+            json.addProperty("baseTarget", Long.toString(baseTarget));
+            json.addProperty("height", Long.toString(height));
+            json.addProperty("targetDeadline", maxDeadline);
+        } else if ("submitNonce".equals(requestType)) {
+            long now = System.nanoTime();
+            long deadline = parseLong(query.get("deadline"));
+            long submittedHeight = parseLong(query.get("blockheight"));
+            if (submittedHeight == 0) {
+                submittedHeight = height;
+            }
+            Long started = blockStarts.get(submittedHeight);
+            if (started != null) {
+                long latency = TimeUnit.NANOSECONDS.toMillis(now - started);
+                synchronized (submissions) {
+                    submissions.add(new Submission(submittedHeight, deadline, latency));
+                }
+            } else {
+                logger.info("Submission for unknown height " + submittedHeight);
+            }
+            json.addProperty("result", "success");
+            json.addProperty("deadline", deadline);
+        } else {
+            json.addProperty("errorCode", 1);
+            json.addProperty("errorDescription", "Unsupported request");
+        }
+        reply(exchange, json);
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return value == null ? 0 : Long.parseUnsignedLong(value);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> values = new HashMap<>();
+        if (query == null) {
+            return values;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                values.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return values;
+    }
+
+    private static void reply(HttpExchange exchange, JsonObject json) throws IOException {
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    public long getHeight() {
+        return height;
+    }
+
+    /**
+     * @return a copy of all the submissions received so far
+     */
+    public List<Submission> getSubmissions() {
+        synchronized (submissions) {
+            return new ArrayList<>(submissions);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Description: Creates plot files that take no space on the disk
+ * License: Apache-2.0
+ */
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import plotter.PlotFile;
+
+/**
+ * The files are sparse: they have the size and the name of a finished plot
+ * but no content, so a single machine can simulate many TiB. PoC2 files
+ * have no header, a valid name and size is all the miner checks. Reading
+ * the holes returns zeros without touching the disk, which measures the
+ * miner itself (hashing, scheduling, submissions) and not the disks. All
+ * the nonces of a round hash to the same deadline, the pool of the
+ * simulation accepts any deadline so that every round submits. Use a
+ * tmpfs folder to get the same without depending on sparse file support.
+ */
+public class SyntheticPlots {
+
+    private static final long ONE_TIB = 1099511627776L;
+
+    /**
+     * Creates one folder per simulated disk, each with plot files
+     * @param base where the disk folders are created
+     * @param numericId the account of the plots
+     * @param disks number of disks
+     * @param tibPerDisk size of each disk in TiB
+     * @param filesPerDisk plot files on each disk
+     * @return the folders, one per disk
+     * @throws IOException when a file can not be created
+     */
+    public static List<File> create(File base, String numericId, int disks, double tibPerDisk,
+            int filesPerDisk) throws IOException {
+        List<File> folders = new ArrayList<>();
+        long noncesPerFile = (long) (tibPerDisk * ONE_TIB / PlotFile.BYTES_OF_A_NONCE / filesPerDisk);
+        // keep scoop regions aligned to 4096 bytes for direct I/O
+        noncesPerFile -= noncesPerFile % 64;
+        long nonce = 0;
+        for (int disk = 0; disk < disks; disk++) {
+            File folder = new File(base, "disk" + disk);
+            if (!folder.isDirectory() && !folder.mkdirs()) {
+                throw new IOException("Failed to create " + folder.getAbsolutePath());
+            }
+            for (int i = 0; i < filesPerDisk; i++) {
+                PlotFile plot = new PlotFile(folder, numericId, nonce, noncesPerFile);
+                try (RandomAccessFile raf = new RandomAccessFile(plot.getFile(), "rw")) {
+                    raf.setLength(plot.getSize());
+                }
+                nonce += noncesPerFile;
+            }
+            folders.add(folder);
+        }
+        return folders;
+    }
+
+    /**
+     * Removes the folders created before, with their plots
+     * @param folders the folders returned by create
+     */
+    public static void delete(List<File> folders) {
+        for (File folder : folders) {
+            File[] files = folder.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            folder.delete();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Description: Shares the CPU cores between plotting and mining
+ * License: Apache-2.0
+ */
+package utils;
+
+import static core.Global.logger;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import metrics.Metrics;
+import miner.RoundListener;
+
+/**
+ * Mining has to read and hash a scoop of every plot as soon as a new block
+ * arrives, while plotting can wait. During the first seconds of each round
+ * all the cores belong to the miner and the plotter stays paused, after
+ * that the plotter gets all the cores that the rest of the system is not
+ * using.
+ *
+ * The load is sampled continuously. The load of our own plotter is part of
+ * the system load, so it is removed before deciding how many cores are
+ * free for plotting. Samples taken while the miner runs (and the one right
+ * after) are ignored, they would count the miner as load of other
+ * processes. Each change of cores restarts the plotter, so the number only
+ * changes when the free cores moved by most of a core and not more often
+ * than the minimum interval.
+ */
+public class CPUgovernor implements RoundListener {
+
+    private final int cores;
+    private final long miningWindowMillis;
+    private final DoubleSupplier systemLoad;
+    private final LongSupplier clock;
+    private int coresReserved = 1;
+    private long minChangeNanos = TimeUnit.SECONDS.toNanos(30);
+    private long sampleNanos = TimeUnit.SECONDS.toNanos(1);
+
+    // load of other processes in cores, smoothed between samples
+    private volatile double foreignLoad;
+    private volatile int cpusToPlot;
+    private volatile long miningUntilNanos;
+    private long lastChangeNanos;
+
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong gaugePlot = Metrics.gauge("governor_cpus_plot");
+    private final AtomicLong gaugeMine = Metrics.gauge("governor_cpus_mine");
+
+    /**
+     * @param miningWindowMillis how long the miner keeps all the cores after
+     * a new block, should be close to the time needed to scan the disks
+     */
+    public CPUgovernor(long miningWindowMillis) {
+        this(miningWindowMillis, CPUcalculator.getNumberOfCores(),
+                CPUcalculator::getSystemLoadCPU, System::nanoTime);
+    }
+
+    /**
+     * Governor with other sources for the load and the time, for tests
+     * @param miningWindowMillis how long the miner keeps all the cores
+     * @param cores number of cores of the machine
+     * @param systemLoad load of the whole system between 0 and 1, negative when unknown
+     * @param clock time in nanoseconds, like System.nanoTime()
+     */
+    public CPUgovernor(long miningWindowMillis, int cores, DoubleSupplier systemLoad, LongSupplier clock) {
+        this.cores = cores;
+        this.miningWindowMillis = miningWindowMillis;
+        this.systemLoad = systemLoad;
+        this.clock = clock;
+        this.miningUntilNanos = clock.getAsLong();
+        this.lastChangeNanos = miningUntilNanos;
+        this.cpusToPlot = Math.max(1, cores - coresReserved);
+        publish();
+    }
+
+    /**
+     * Cores that are never given to the plotter, so that the system and the
+     * miner (between rounds) remain responsive. Default is 1.
+     * @param coresReserved number of cores to leave free
+     */
+    public void setCoresReserved(int coresReserved) {
+        this.coresReserved = Math.max(0, Math.min(cores - 1, coresReserved));
+    }
+
+    /**
+     * Minimum time between two changes of the cores given to the plotter,
+     * pausing for mining and resuming are not limited. Default is 30 s.
+     * @param minChangeMillis the interval
+     */
+    public synchronized void setMinChangeMillis(long minChangeMillis) {
+        this.minChangeNanos = TimeUnit.MILLISECONDS.toNanos(minChangeMillis);
+    }
+
+    /**
+     * Starts sampling the load of the system
+     * @param sampleMillis time between two samples
+     */
+    public synchronized void start(long sampleMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        sampleNanos = TimeUnit.MILLISECONDS.toNanos(sampleMillis);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cpu-governor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::sample, 0, sampleMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Takes a new sample of the load and decides how many cores the plotter
+     * may use from now on. Called by the scheduler of start(), every sample
+     * period (1 s until started).
+     */
+    public void sample() {
+        double load = systemLoad.getAsDouble();
+        if (load < 0) {
+            // not available on this system
+            return;
+        }
+        if (clock.getAsLong() - miningUntilNanos < sampleNanos) {
+            // the miner is running or was until the last sample, its load is not foreign
+            publish();
+            return;
+        }
+        double othersNow = Math.max(0, load * cores - cpusToPlot);
+        foreignLoad = foreignLoad * 0.7 + othersNow * 0.3;
+        publish();
+    }
+
+    private synchronized void publish() {
+        long now = clock.getAsLong();
+        double free = cores - coresReserved - foreignLoad;
+        int cpus;
+        if (isMiningWindow()) {
+            cpus = 0;
+        } else if (cpusToPlot == 0) {
+            // resuming after the mining window
+            cpus = Math.max(1, Math.min(cores, (int) Math.round(free)));
+            lastChangeNanos = now;
+        } else if (Math.abs(free - cpusToPlot) > 0.75 && now - lastChangeNanos >= minChangeNanos) {
+            // each change restarts the plotter, small or frequent ones are not worth it
+            cpus = Math.max(1, Math.min(cores, (int) Math.round(free)));
+            lastChangeNanos = now;
+        } else {
+            cpus = cpusToPlot;
+        }
+        if (cpus != cpusToPlot) {
+            logger.debug("CPUs for plotting: " + cpus);
+        }
+        cpusToPlot = cpus;
+        gaugePlot.set(cpus);
+        gaugeMine.set(getCpusToMine());
+    }
+
+    /**
+     * Are we in the first seconds of a mining round?
+     * @return true when the miner should have all the cores
+     */
+    public boolean isMiningWindow() {
+        return clock.getAsLong() - miningUntilNanos < 0;
+    }
+
+    /**
+     * Number of cores that the plotter can use right now
+     * @return zero when the plotter should be paused
+     */
+    public int getCpusToPlot() {
+        if (cpusToPlot == 0 && !isMiningWindow()) {
+            // the window ended before the next sample
+            publish();
+        }
+        return cpusToPlot;
+    }
+
+    /**
+     * Number of cores the miner should be configured with. The miner is only
+     * busy during the rounds, so it gets them all.
+     * @return the number of cores of this machine
+     */
+    public int getCpusToMine() {
+        return cores;
+    }
+
+    @Override
+    public void roundStarted(long height) {
+        miningUntilNanos = clock.getAsLong() + TimeUnit.MILLISECONDS.toNanos(miningWindowMillis);
+        publish();
+    }
+
+    @Override
+    public void roundFinished(long scanMillis) {
+        // the disks are done, give the cores back right away
+        miningUntilNanos = clock.getAsLong();
+        publish();
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Description: Keeps plot writes away from the disks the miner is reading
+ * License: Apache-2.0
+ */
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import metrics.Metrics;
+import miner.RoundListener;
+
+/**
+ * On a hard disk the head can only be in one place. When the plotter (or a
+ * cache move) writes on the same disk that the miner is reading, both jump
+ * back and forth and both become very slow. The miner has a deadline to
+ * meet, so while it scans a disk the writes to that disk are paused, or
+ * limited to a small bandwidth when a throttle is set. Long writes go
+ * through write(), in chunks small enough to keep to that bandwidth.
+ *
+ * Folders are grouped by physical device, two partitions of the same disk
+ * count as the same device. Writes to a device resume as soon as the miner
+ * reports (in its drive statistics) that all the folders of the device were
+ * read, or at the end of the round.
+ */
+public class IOarbiter implements RoundListener {
+
+    // sda1 -> sda, nvme0n1p2 -> nvme0n1, mmcblk0p1 -> mmcblk0
+    private static final Pattern PARTITION
+            = Pattern.compile("^(/dev/(?:nvme\\d+n\\d+|mmcblk\\d+))p\\d+$|^(/dev/(?:sd|hd|vd|xvd)[a-z]+)\\d+$");
+
+    private static final long MIN_CHUNK = 64L * 1024;
+    private static final long MAX_CHUNK = 4L * 1024 * 1024;
+
+    private final ConcurrentHashMap<String, String> deviceOfFolder = new ConcurrentHashMap<>();
+    // mining folder -> device
+    private final ConcurrentHashMap<String, String> miningFolders = new ConcurrentHashMap<>();
+    // device -> folders not read yet in this round
+    private final ConcurrentHashMap<String, Set<String>> pendingFolders = new ConcurrentHashMap<>();
+    private final long maxScanMillis;
+    private volatile long throttleBytesPerSecond;
+
+    private volatile boolean scanning;
+    private volatile long scanStartNanos;
+    private final Object lock = new Object();
+
+    /**
+     * @param maxScanMillis writes resume after this time even when the end
+     * of the round was not seen, so that a missing log line can not pause
+     * the plotter forever
+     */
+    public IOarbiter(long maxScanMillis) {
+        this.maxScanMillis = maxScanMillis;
+    }
+
+    /**
+     * Instead of pausing, let writes continue at a small bandwidth while the
+     * disk is scanned. Only possible for cache moves, the plotter is always
+     * paused.
+     * @param bytesPerSecond zero to pause the writes completely
+     */
+    public void setThrottle(long bytesPerSecond) {
+        this.throttleBytesPerSecond = Math.max(0, bytesPerSecond);
+    }
+
+    /**
+     * Gets the physical device that holds a folder
+     * @param folder any folder or file
+     * @return a name that is the same for all folders on the same disk
+     */
+    public String getDevice(File folder) {
+        return deviceOfFolder.computeIfAbsent(folder.getAbsolutePath(), key -> resolveDevice(folder));
+    }
+
+    private static String resolveDevice(File folder) {
+        Path path = folder.getAbsoluteFile().toPath();
+        // the folder may not exist yet, use the closest one that does
+        while (path != null && !Files.exists(path)) {
+            path = path.getParent();
+        }
+        if (path == null) {
+            return folder.getAbsolutePath();
+        }
+        if (OSValidator.IS_WINDOWS) {
+            return path.getRoot().toString();
+        }
+        try {
+            FileStore store = Files.getFileStore(path);
+            String name = store.name();
+            Matcher matcher = PARTITION.matcher(name);
+            if (matcher.matches()) {
+                return matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+            }
+            return name.isEmpty() ? store.toString() : name;
+        } catch (IOException ex) {
+            return folder.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Registers a folder that the miner reads on every round
+     * @param folder folder with plot files
+     */
+    public void addMiningFolder(File folder) {
+        miningFolders.put(folder.getAbsolutePath(), getDevice(folder));
+    }
+
+    /**
+     * Is the miner reading the disk where this folder is?
+     * @param folder where we want to write
+     * @return true when writes should wait
+     */
+    public boolean isBeingScanned(File folder) {
+        if (!scanning) {
+            return false;
+        }
+        if (System.nanoTime() - scanStartNanos > TimeUnit.MILLISECONDS.toNanos(maxScanMillis)) {
+            scanning = false;
+            return false;
+        }
+        return pendingFolders.containsKey(getDevice(folder));
+    }
+
+    /**
+     * Blocks while the miner is reading the disk of the folder
+     * @param folder where we want to write
+     * @throws InterruptedException when the thread is interrupted
+     */
+    public void awaitWriteAllowed(File folder) throws InterruptedException {
+        if (!isBeingScanned(folder)) {
+            return;
+        }
+        long started = System.nanoTime();
+        synchronized (lock) {
+            while (isBeingScanned(folder)) {
+                // wake up from time to time, the scan might time out
+                lock.wait(1000);
+            }
+        }
+        Metrics.counter("io_paused_ms_total", "device", getDevice(folder))
+                .add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /**
+     * Writes a long run of data in chunks, asking permission before each
+     * one. With a throttle the chunks are small (a tenth of a second of the
+     * bandwidth), so the disk is never written at full speed while it is
+     * scanned. Without a scan the chunks are up to 4 MiB, so a scan that
+     * starts during the run is seen quickly.
+     * @param folder where we write
+     * @param bytes size of the run
+     * @param writer writes one chunk
+     * @throws IOException when the writer fails
+     * @throws InterruptedException when the thread is interrupted
+     */
+    public void write(File folder, long bytes, ChunkWriter writer) throws IOException, InterruptedException {
+        long written = 0;
+        while (written < bytes) {
+            long chunk = Math.min(bytes - written, getChunkSize(folder));
+            acquireWrite(folder, chunk);
+            long started = System.nanoTime();
+            long done = writer.write(written, chunk);
+            recordWrite(folder, System.nanoTime() - started);
+            if (done <= 0) {
+                throw new IOException("Nothing written on " + folder);
+            }
+            written += done;
+        }
+    }
+
+    private long getChunkSize(File folder) {
+        long throttle = throttleBytesPerSecond;
+        if (throttle == 0 || !isBeingScanned(folder)) {
+            return MAX_CHUNK;
+        }
+        return Math.min(MAX_CHUNK, Math.max(MIN_CHUNK, throttle / 10));
+    }
+
+    /**
+     * Writes one chunk of a run given to write()
+     */
+    @FunctionalInterface
+    public interface ChunkWriter {
+
+        /**
+         * @param offset from the start of the run
+         * @param length bytes to write
+         * @return bytes written, at most length
+         * @throws IOException when the disk fails
+         */
+        long write(long offset, long length) throws IOException;
+    }
+
+    /**
+     * Asks permission to write a block of data, used between the blocks of
+     * long copies. Waits for the end of the scan, or only the time needed to
+     * keep the bandwidth under the throttle. The block is written at full
+     * speed, keep it small or use write().
+     * @param folder where we want to write
+     * @param bytes size of the block to be written
+     * @throws InterruptedException when the thread is interrupted
+     */
+    public void acquireWrite(File folder, long bytes) throws InterruptedException {
+        if (!isBeingScanned(folder)) {
+            return;
+        }
+        long throttle = throttleBytesPerSecond;
+        if (throttle == 0) {
+            awaitWriteAllowed(folder);
+            return;
+        }
+        long sleepMillis = bytes * 1000 / throttle;
+        Thread.sleep(sleepMillis);
+        Metrics.counter("io_paused_ms_total", "device", getDevice(folder)).add(sleepMillis);
+    }
+
+    /**
+     * Accounts the time spent writing plots on a disk
+     * @param folder where we wrote
+     * @param nanos how long we were writing
+     */
+    public void recordWrite(File folder, long nanos) {
+        Metrics.counter("io_write_ms_total", "device", getDevice(folder))
+                .add(TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    @Override
+    public void roundStarted(long height) {
+        pendingFolders.clear();
+        for (Map.Entry<String, String> entry : miningFolders.entrySet()) {
+            pendingFolders.computeIfAbsent(entry.getValue(), device -> ConcurrentHashMap.newKeySet())
+                    .add(entry.getKey());
+        }
+        scanStartNanos = System.nanoTime();
+        scanning = true;
+    }
+
+    @Override
+    public void driveFinished(String drive, List<File> folders, long scanMillis) {
+        for (File folder : folders) {
+            String device = miningFolders.get(folder.getAbsolutePath());
+            if (device == null) {
+                continue;
+            }
+            Set<String> pending = pendingFolders.get(device);
+            if (pending != null && pending.remove(folder.getAbsolutePath()) && pending.isEmpty()) {
+                // all the folders of the device were read
+                pendingFolders.remove(device);
+                Metrics.timer("io_scan", "device", device)
+                        .record(System.nanoTime() - scanStartNanos);
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void roundFinished(long scanMillis) {
+        scanning = false;
+        pendingFolders.clear();
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+}
@@ -5,54 +5,199 @@
  */
 package utils;
 
+import java.math.BigDecimal;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.util.Locale;
 
-
+/**
+ * Amounts in NQT (and any other fixed-point value, like bytes in GiB) are
+ * formatted with integer arithmetic straight into the given buffer: exact
+ * for every long, rounded HALF_EVEN and grouped like Locale.ENGLISH, with
+ * up to 8 fraction digits; formats with more digits only work through
+ * format(). The presets are shared between threads without locks, doubles
+ * still go through a NumberFormat, one per thread.
+ */
 public class NumberFormatting {
-	
-	private final NumberFormat nf;
-	public static final long 
+
+	public static final long
                 ONE_SIGNA = 100000000L,
                 ONE_GIB = 1073741824L;
-	
-        
-	private NumberFormatting(NumberFormat nf) {
-		this.nf = nf;
+
+    // sign, 11 integer digits, 3 separators, point and 8 decimals
+    public static final int MAX_LENGTH = 24;
+
+    private static final int SIGNA_DECIMALS = 8;
+    private static final long[] POW10 = new long[19];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    // scratch for the StringBuilder variant, big enough for any unit
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[64]);
+
+    private final int minimumFractionDigits;
+    private final int maximumFractionDigits;
+    private final ThreadLocal<NumberFormat> nf;
+
+	private NumberFormatting(int minimumFractionDigits, int maximumFractionDigits) {
+		this.minimumFractionDigits = minimumFractionDigits;
+		this.maximumFractionDigits = maximumFractionDigits;
+		this.nf = ThreadLocal.withInitial(() -> {
+            // NumberFormat nf = NumberFormat.getInstance(Translation.getCurrentLocale());
+            NumberFormat format = NumberFormat.getInstance(Locale.ENGLISH);
+            format.setMinimumFractionDigits(minimumFractionDigits);
+            format.setMaximumFractionDigits(maximumFractionDigits);
+            return format;
+        });
 	}
-	
+
     //NF_FULL min 5, max 8
     public static NumberFormatting NF(int minimumFractionDigits, int maximumFractionDigits){
-        // NumberFormat nf = NumberFormat.getInstance(Translation.getCurrentLocale());
-        NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
-        nf.setMinimumFractionDigits(minimumFractionDigits);
-        nf.setMaximumFractionDigits(maximumFractionDigits);
-        return new NumberFormatting(nf);
+        return new NumberFormatting(minimumFractionDigits, maximumFractionDigits);
     }
-    
+
+    /**
+     * @return the format of the calling thread, NumberFormat is not thread safe
+     */
     public NumberFormat getFormat() {
-    	return nf;
+    	return nf.get();
     }
-    
+
 	public String format(long valueNQT) {
-		double dvalue = (double)valueNQT / ONE_SIGNA;
-		return nf.format(dvalue);
+		if (!isFixedPoint()) {
+			// exact as well, only slower
+			return nf.get().format(BigDecimal.valueOf(valueNQT, SIGNA_DECIMALS));
+		}
+		return formatTo(valueNQT, new StringBuilder(MAX_LENGTH)).toString();
 	}
-    
+
+    /**
+     * @return true when the formatTo methods can be used, with at most 8
+     * fraction digits (the precision of an amount in NQT)
+     */
+    public boolean isFixedPoint() {
+        return minimumFractionDigits >= 0 && minimumFractionDigits <= maximumFractionDigits
+                && maximumFractionDigits <= SIGNA_DECIMALS;
+    }
+
 	public String format(double dvalue) {
-		return nf.format(dvalue);
+		return nf.get().format(dvalue);
 	}
-    
+
+    /**
+     * Appends an amount without creating any object
+     * @param valueNQT the amount in NQT
+     * @param out where the text is appended
+     * @return the same builder
+     */
+    public StringBuilder formatTo(long valueNQT, StringBuilder out) {
+        return formatTo(valueNQT, ONE_SIGNA, out);
+    }
+
+    /**
+     * Appends a fixed-point value, e.g. formatTo(bytes, ONE_GIB, out) for GiB
+     * @param units the value in its smallest unit
+     * @param unitsPerOne units making one, from 2 up to 10^17
+     * @param out where the text is appended
+     * @return the same builder
+     */
+    public StringBuilder formatTo(long units, long unitsPerOne, StringBuilder out) {
+        char[] buffer = BUFFER.get();
+        int length = formatTo(units, unitsPerOne, buffer, 0);
+        return out.append(buffer, 0, length);
+    }
+
+    /**
+     * Writes an amount without creating any object
+     * @param valueNQT the amount in NQT
+     * @param out where the text is written, MAX_LENGTH chars are enough
+     * @param offset first position to write
+     * @return the position after the last char written
+     */
+    public int formatTo(long valueNQT, char[] out, int offset) {
+        return formatTo(valueNQT, ONE_SIGNA, out, offset);
+    }
+
+    /**
+     * Writes a fixed-point value
+     * @param units the value in its smallest unit
+     * @param unitsPerOne units making one, from 2 up to 10^17
+     * @param out where the text is written
+     * @param offset first position to write
+     * @return the position after the last char written
+     */
+    public int formatTo(long units, long unitsPerOne, char[] out, int offset) {
+        if (!isFixedPoint()) {
+            throw new IllegalStateException("Fixed-point formatting is limited to " + SIGNA_DECIMALS
+                    + " fraction digits, use format(double)");
+        }
+        if (unitsPerOne < 2 || unitsPerOne > POW10[17]) {
+            throw new IllegalArgumentException("Units per one out of range: " + unitsPerOne);
+        }
+        boolean negative = units < 0;
+        // remainders of negative values are negative, so Long.MIN_VALUE needs no special case
+        long integer = Math.abs(units / unitsPerOne);
+        long remainder = Math.abs(units % unitsPerOne);
+
+        long fraction = 0;
+        for (int i = 0; i < maximumFractionDigits; i++) {
+            remainder *= 10;
+            fraction = fraction * 10 + remainder / unitsPerOne;
+            remainder %= unitsPerOne;
+        }
+        // HALF_EVEN on the last digit kept
+        long lastKept = maximumFractionDigits == 0 ? integer : fraction;
+        long twice = remainder * 2;
+        if (twice > unitsPerOne || (twice == unitsPerOne && (lastKept & 1) == 1)) {
+            fraction++;
+            if (fraction == POW10[maximumFractionDigits]) {
+                fraction = 0;
+                integer++;
+            }
+        }
+
+        int decimals = maximumFractionDigits;
+        while (decimals > minimumFractionDigits && fraction % 10 == 0) {
+            fraction /= 10;
+            decimals--;
+        }
+
+        int position = offset;
+        if (negative && (integer != 0 || fraction != 0)) {
+            out[position++] = '-';
+        }
+        int digits = 1;
+        while (digits < 19 && integer >= POW10[digits]) {
+            digits++;
+        }
+        for (int i = digits - 1; i >= 0; i--) {
+            out[position++] = (char) ('0' + (integer / POW10[i]) % 10);
+            if (i > 0 && i % 3 == 0) {
+                out[position++] = ',';
+            }
+        }
+        if (decimals > 0) {
+            out[position++] = '.';
+            for (int i = decimals - 1; i >= 0; i--) {
+                out[position++] = (char) ('0' + (fraction / POW10[i]) % 10);
+            }
+        }
+        return position;
+    }
+
     // Always all decimal places
     public static final NumberFormatting FULL = NF(8, 8);
-    
+
     // No decimal places
     public static final NumberFormatting INT = NF(0, 0);
-    
+
     // Minimum of 4 decimal places
     public static final NumberFormatting FIAT = NF(4, 8);
-    
+
     // Minimum of 5 decimal places
     public static final NumberFormatting SIGNA = NF(2, 8);
 
@@ -63,6 +208,76 @@ public class NumberFormatting {
     public static final NumberFormatting TOKEN = NF(2, 4);
 
     public static Number parse(String s) throws ParseException {
-    	return FULL.nf.parse(s);
+    	return FULL.nf.get().parse(s);
+    }
+
+    /**
+     * Reads an amount exactly, as written by format(long)
+     * @param s like "-1,234.5", grouping separators are optional
+     * @return the amount in NQT
+     * @throws NumberFormatException when it is not a number, has more than
+     * 8 decimals or does not fit in a long
+     */
+    public static long parseNQT(CharSequence s) {
+        int start = 0;
+        int end = s.length();
+        while (start < end && Character.isWhitespace(s.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(s.charAt(end - 1))) {
+            end--;
+        }
+        boolean negative = false;
+        if (start < end && (s.charAt(start) == '-' || s.charAt(start) == '+')) {
+            negative = s.charAt(start) == '-';
+            start++;
+        }
+
+        // accumulated as a negative number to reach Long.MIN_VALUE
+        long value = 0;
+        int decimals = -1;
+        boolean anyDigit = false;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == ',' && decimals < 0 && anyDigit) {
+                continue;
+            }
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Invalid amount: " + s);
+            }
+            anyDigit = true;
+            if (decimals >= 0) {
+                if (decimals == SIGNA_DECIMALS) {
+                    if (c != '0') {
+                        throw new NumberFormatException("More than " + SIGNA_DECIMALS + " decimals: " + s);
+                    }
+                    continue;
+                }
+                decimals++;
+            }
+            value = multiplyAdd(value, 10, c - '0', s);
+        }
+        if (!anyDigit) {
+            throw new NumberFormatException("Invalid amount: " + s);
+        }
+        value = multiplyAdd(value, POW10[SIGNA_DECIMALS - Math.max(decimals, 0)], 0, s);
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                throw new NumberFormatException("Amount too large: " + s);
+            }
+            value = -value;
+        }
+        return value;
+    }
+
+    private static long multiplyAdd(long negativeValue, long factor, int digit, CharSequence s) {
+        if (negativeValue < (Long.MIN_VALUE + digit) / factor) {
+            throw new NumberFormatException("Amount too large: " + s);
+        }
+        return negativeValue * factor - digit;
     }
 }
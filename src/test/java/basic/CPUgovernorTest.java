@@ -0,0 +1,84 @@
+/*
+ * Description: Test how the cores are shared between plotting and mining
+ * License: Apache-2.0
+ */
+package basic;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import utils.CPUgovernor;
+
+public class CPUgovernorTest {
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    // load of the whole system, 7 of 8 cores is our own plotter alone
+    private volatile double load = 7 / 8.0;
+
+    private CPUgovernor create(long minChangeMillis) {
+        CPUgovernor governor = new CPUgovernor(10000, 8, () -> load, clock::get);
+        governor.setMinChangeMillis(minChangeMillis);
+        return governor;
+    }
+
+    private void advance(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    public void pauseForMiningAndIgnoreItsLoad() {
+        CPUgovernor governor = create(0);
+        advance(2000);
+        governor.sample();
+        assertEquals(7, governor.getCpusToPlot());
+
+        governor.roundStarted(100);
+        assertTrue(governor.isMiningWindow());
+        assertEquals(0, governor.getCpusToPlot());
+        // the miner uses every core, that is not load of other processes
+        load = 1;
+        advance(2000);
+        governor.sample();
+        assertEquals(0, governor.getCpusToPlot());
+
+        advance(1000);
+        governor.roundFinished(3000);
+        assertFalse(governor.isMiningWindow());
+        assertEquals(7, governor.getCpusToPlot());
+
+        // the miner may still be busy until the next sample
+        advance(500);
+        governor.sample();
+        // one core used by others, only the fourth counted sample moves the average above 0.75
+        for (int i = 0; i < 3; i++) {
+            advance(1000);
+            governor.sample();
+            assertEquals(7, governor.getCpusToPlot());
+        }
+        advance(1000);
+        governor.sample();
+        assertEquals(6, governor.getCpusToPlot());
+    }
+
+    @Test
+    public void noChangeInsideMinChangeInterval() {
+        CPUgovernor governor = create(30000);
+        // one core used by others
+        load = 1;
+        for (int i = 0; i < 8; i++) {
+            advance(1000);
+            governor.sample();
+            assertEquals(7, governor.getCpusToPlot());
+        }
+        advance(30000);
+        governor.sample();
+        assertEquals(6, governor.getCpusToPlot());
+
+        // a small drift back does not restart the plotter
+        load = 6 / 8.0;
+        advance(1000);
+        governor.sample();
+        assertEquals(6, governor.getCpusToPlot());
+    }
+}
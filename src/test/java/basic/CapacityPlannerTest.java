@@ -0,0 +1,64 @@
+/*
+ * Description: Test the sizing of new plot files
+ * License: Apache-2.0
+ */
+package basic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import plotter.CapacityPlan;
+import plotter.CapacityPlanner;
+import plotter.PlotCatalog;
+import plotter.PlotFile;
+
+public class CapacityPlannerTest {
+
+    private final String numericId = "5505480724951664437";
+
+    @Test
+    public void planAlignedWithoutOverlap() throws IOException {
+        File folder = Files.createTempDirectory("planner").toFile();
+        // an existing plot right where we would like to start
+        File existing = new File(folder, numericId + "_1000_5000");
+        existing.createNewFile();
+        // plots of other accounts are ignored
+        new File(folder, "1234_0_100000").createNewFile();
+
+        PlotCatalog catalog = new PlotCatalog(numericId);
+        catalog.addFolder(folder);
+        assertEquals(1, catalog.getPlots().size());
+
+        CapacityPlanner planner = new CapacityPlanner();
+        planner.setMaxFileNonces(1000);
+        CapacityPlan plan = planner.plan(catalog, 2000);
+
+        List<PlotFile> files = plan.getFiles();
+        assertFalse(files.isEmpty());
+        long next = 6000;
+        for (PlotFile file : files) {
+            assertEquals(0, file.getNonces() % planner.getAlignment());
+            assertTrue(file.getNonces() <= 1000);
+            assertEquals(next, file.getStartNonce());
+            next = file.getEndNonce();
+        }
+        assertTrue(plan.getBytes() <= folder.getUsableSpace());
+        assertTrue(plan.getReport().contains("Total to add:"));
+
+        existing.delete();
+        new File(folder, "1234_0_100000").delete();
+        folder.delete();
+    }
+
+    @Test
+    public void parseUnsignedNames() {
+        PlotFile plot = PlotFile.parse(new File(numericId + "_15871238935771348992_38144"));
+        assertNotNull(plot);
+        assertEquals("15871238935771348992", Long.toUnsignedString(plot.getStartNonce()));
+        assertEquals(38144, plot.getNonces());
+        assertNull(PlotFile.parse(new File(numericId + "_1_2.moving")));
+    }
+}
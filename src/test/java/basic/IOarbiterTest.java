@@ -0,0 +1,82 @@
+/*
+ * Description: Test the pausing of writes while the miner reads a disk
+ * License: Apache-2.0
+ */
+package basic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import utils.IOarbiter;
+
+public class IOarbiterTest {
+
+    @Test
+    public void releaseDeviceWhenAllItsFoldersWereRead() throws IOException {
+        // both folders are on the same device
+        File first = Files.createTempDirectory("arbiter").toFile();
+        File second = Files.createTempDirectory("arbiter").toFile();
+        IOarbiter arbiter = new IOarbiter(60000);
+        arbiter.addMiningFolder(first);
+        arbiter.addMiningFolder(second);
+        assertFalse(arbiter.isBeingScanned(first));
+
+        arbiter.roundStarted(100);
+        assertTrue(arbiter.isBeingScanned(first));
+        // like two partitions of one disk, two drives for the miner
+        arbiter.driveFinished("801", Collections.singletonList(first), 1000);
+        assertTrue(arbiter.isBeingScanned(second));
+        arbiter.driveFinished("802", Collections.singletonList(second), 1000);
+        assertFalse(arbiter.isBeingScanned(first));
+        assertFalse(arbiter.isBeingScanned(second));
+
+        arbiter.roundStarted(101);
+        assertTrue(arbiter.isBeingScanned(second));
+        arbiter.roundFinished(2000);
+        assertFalse(arbiter.isBeingScanned(second));
+
+        first.delete();
+        second.delete();
+    }
+
+    @Test
+    public void throttledWritesGoInSmallChunks() throws IOException, InterruptedException {
+        File folder = Files.createTempDirectory("arbiter").toFile();
+        IOarbiter arbiter = new IOarbiter(60000);
+        arbiter.addMiningFolder(folder);
+        arbiter.setThrottle(2L << 20);
+        List<Long> chunks = new ArrayList<>();
+
+        // not scanned, one chunk
+        arbiter.write(folder, 512 * 1024, (offset, length) -> {
+            chunks.add(length);
+            return length;
+        });
+        assertEquals(Collections.singletonList(512L * 1024), chunks);
+
+        // scanned, a tenth of a second of the throttle each time
+        chunks.clear();
+        arbiter.roundStarted(100);
+        long started = System.nanoTime();
+        arbiter.write(folder, 512 * 1024, (offset, length) -> {
+            chunks.add(length);
+            return length;
+        });
+        assertEquals(3, chunks.size());
+        long total = 0;
+        for (long chunk : chunks) {
+            assertTrue(chunk <= (2L << 20) / 10);
+            total += chunk;
+        }
+        assertEquals(512 * 1024, total);
+        // 512 KiB at 2 MiB/s
+        assertTrue(System.nanoTime() - started >= 200000000L);
+        arbiter.roundFinished(1000);
+        folder.delete();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Description: Test the execution and cancellation of jobs
+ * License: Apache-2.0
+ */
+package basic;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import jobs.JobExecutor;
+import jobs.JobHandle;
+import jobs.JobType;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JobsTest {
+
+    @Test
+    public void completeJob() throws Exception {
+        JobExecutor executor = new JobExecutor(2);
+        JobHandle<Integer> handle = executor.submit("sum", JobType.COMPUTE, context -> {
+            int sum = 0;
+            for (int i = 1; i <= 10; i++) {
+                sum += i;
+                context.setProgress(i, 10);
+            }
+            return sum;
+        });
+        assertEquals(55, (int) handle.getFuture().get(10, TimeUnit.SECONDS));
+        assertEquals(1.0, handle.getProgress(), 0.0001);
+        assertTrue(executor.shutdown(1000));
+    }
+
+    @Test
+    public void cancelJob() throws Exception {
+        JobExecutor executor = new JobExecutor(2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch cancelAction = new CountDownLatch(1);
+        JobHandle<Void> handle = executor.submit("wait", JobType.MOVE, context -> {
+            context.onCancel(cancelAction::countDown);
+            started.countDown();
+            Thread.sleep(60000);
+            return null;
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        handle.cancel();
+        assertTrue(cancelAction.await(10, TimeUnit.SECONDS));
+        assertThrows(CancellationException.class, () -> handle.getFuture().get(10, TimeUnit.SECONDS));
+        assertTrue(handle.isCancelled());
+        assertTrue(executor.shutdown(1000));
+    }
+
+    @Test
+    public void cancelJobThroughItsFuture() throws Exception {
+        JobExecutor executor = new JobExecutor(2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch cancelAction = new CountDownLatch(1);
+        JobHandle<Void> handle = executor.submit("wait", JobType.PLOT, context -> {
+            context.onCancel(cancelAction::countDown);
+            started.countDown();
+            Thread.sleep(60000);
+            return null;
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        handle.getFuture().cancel(true);
+        // the job is stopped, not only its future
+        assertTrue(cancelAction.await(10, TimeUnit.SECONDS));
+        assertTrue(handle.isCancelled());
+        assertTrue(handle.awaitStopped(10, TimeUnit.SECONDS));
+        assertTrue(executor.shutdown(1000));
+    }
+
+    @Test
+    public void processJobsKeepTheJvmAlive() throws Exception {
+        JobExecutor executor = new JobExecutor(2);
+        JobHandle<Boolean> handle = executor.submit("daemon", JobType.MINE,
+                context -> Thread.currentThread().isDaemon());
+        assertFalse(handle.getFuture().get(10, TimeUnit.SECONDS));
+        assertTrue(executor.shutdown(1000));
+    }
+
+    @Test
+    public void failedJob() throws Exception {
+        JobExecutor executor = new JobExecutor(2);
+        JobHandle<Void> handle = executor.submit("fail", JobType.VERIFY, context -> {
+            throw new IllegalStateException("broken");
+        });
+        ExecutionException ex = assertThrows(ExecutionException.class,
+                () -> handle.getFuture().get(10, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof IllegalStateException);
+        assertTrue(executor.shutdown(1000));
+    }
+}
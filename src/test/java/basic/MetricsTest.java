@@ -0,0 +1,101 @@
+/*
+ * Description: Test the metrics collected from the miner output
+ * License: Apache-2.0
+ */
+package basic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import metrics.Metrics;
+import metrics.PrometheusExporter;
+import miner.DriveIds;
+import miner.MinerLog;
+import miner.RoundListener;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+
+    @Test
+    public void parseMinerOutput() {
+        long rounds = Metrics.counter("miner_rounds_total").sum();
+        long submitted = Metrics.counter("miner_deadlines_submitted_total").sum();
+        long found = Metrics.counter("miner_deadlines_found_total").sum();
+
+        MinerLog log = new MinerLog(100000);
+        log.parse("new block: height=1000, scoop=42");
+        assertTrue(log.isScanning());
+        assertEquals(1000, Metrics.gauge("miner_block_height").get());
+
+        log.parse("deadline captured: account=1, nonce=2, deadline=500");
+        log.parse("deadline captured: account=1, nonce=3, deadline=500000");
+        log.parse("deadline accepted: account=1, nonce=2, deadline=500");
+        log.parse("round finished: roundtime=1234ms, speed=100.00MiB/s");
+
+        assertFalse(log.isScanning());
+        assertEquals(rounds + 1, Metrics.counter("miner_rounds_total").sum());
+        assertEquals(found + 2, Metrics.counter("miner_deadlines_found_total").sum());
+        assertEquals(submitted + 1, Metrics.counter("miner_deadlines_submitted_total").sum());
+        assertEquals(500, Metrics.gauge("miner_best_deadline").get());
+        assertEquals(1234000000L, Metrics.timer("miner_round_scan").getLastNanos());
+    }
+
+    @Test
+    public void parseDriveStatistics() throws IOException {
+        File folder = Files.createTempDirectory("metrics").toFile();
+        String drive = DriveIds.of(folder);
+        List<File> finished = new ArrayList<>();
+        MinerLog log = new MinerLog(100000);
+        log.setFolders(Collections.singletonList(folder));
+        log.addListener(new RoundListener() {
+            @Override
+            public void roundStarted(long height) {
+            }
+
+            @Override
+            public void roundFinished(long scanMillis) {
+            }
+
+            @Override
+            public void driveFinished(String name, List<File> folders, long scanMillis) {
+                finished.addAll(folders);
+            }
+        });
+        log.parse("new block: height=1001, scoop=42");
+        // as printed by the miner with show_drive_stats
+        log.parse("[INFO]     drive " + drive + " finished, speed=87 MiB/s");
+
+        assertEquals(Collections.singletonList(folder), finished);
+        assertEquals(87L << 20, Metrics.gauge("miner_disk_read_speed_bytes", "disk", drive).get());
+        assertTrue(Metrics.timer("miner_disk_scan", "disk", drive).getCount() > 0);
+        assertTrue(log.getDisksScanned().contains(drive));
+        folder.delete();
+    }
+
+    @Test
+    public void exportPrometheus() throws IOException {
+        Metrics.counter("test_bytes_total", "disk", "/mnt/\"a\"").add(5);
+        StringBuilder text = new StringBuilder();
+        PrometheusExporter.write(text);
+        assertTrue(text.toString().contains("# TYPE test_bytes_total counter\n"));
+        assertTrue(text.toString().contains("test_bytes_total{disk=\"/mnt/\\\"a\\\"\"} 5\n"));
+    }
+
+    @Test
+    public void oneTypeLinePerFamily() throws IOException {
+        // "_" sorts before "{", the labelled samples come after test_family_total_x
+        Metrics.counter("test_family_total", "disk", "a").add(1);
+        Metrics.counter("test_family_total_x").add(1);
+        Metrics.counter("test_family_total", "disk", "b").add(1);
+        StringBuilder text = new StringBuilder();
+        PrometheusExporter.write(text);
+        String exported = text.toString();
+        String type = "# TYPE test_family_total counter\n";
+        assertEquals(exported.indexOf(type), exported.lastIndexOf(type));
+        assertTrue(exported.contains(type + "test_family_total{disk=\"a\"} 1\ntest_family_total{disk=\"b\"} 1\n"));
+    }
+}
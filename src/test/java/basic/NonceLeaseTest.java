@@ -0,0 +1,90 @@
+/*
+ * Description: Test the leasing of nonce ranges to plotting workers
+ * License: Apache-2.0
+ */
+package basic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import plotter.NonceLease;
+import plotter.NonceLeaseCoordinator;
+import plotter.PlotCatalog;
+
+public class NonceLeaseTest {
+
+    private final String numericId = "5505480724951664437";
+
+    @Test
+    public void leasesDoNotOverlap() {
+        NonceLeaseCoordinator coordinator = new NonceLeaseCoordinator(60000, 1000);
+        NonceLease first = coordinator.lease(numericId, 500, "a");
+        NonceLease second = coordinator.lease(numericId, 500, "b");
+        NonceLease other = coordinator.lease("1234", 500, "c");
+
+        assertEquals(1000, first.getStartNonce());
+        assertEquals(1500, second.getStartNonce());
+        assertEquals(1000, other.getStartNonce());
+        assertTrue(coordinator.heartbeat(first.getId(), 100));
+        assertTrue(coordinator.complete(first.getId()));
+        // sent again when the answer was lost, counted once
+        assertTrue(coordinator.complete(first.getId()));
+        assertFalse(coordinator.complete("unknown"));
+        assertEquals(500, coordinator.getCompletedNonces());
+
+        // a released range goes to the next worker, split when it is smaller
+        assertTrue(coordinator.release(second.getId()));
+        NonceLease third = coordinator.lease(numericId, 200, "d");
+        NonceLease fourth = coordinator.lease(numericId, 500, "d");
+        assertEquals(1500, third.getStartNonce());
+        assertEquals(1700, fourth.getStartNonce());
+        assertEquals(300, fourth.getNonces());
+    }
+
+    @Test
+    public void expiredLeasesAreReclaimed() throws InterruptedException {
+        NonceLeaseCoordinator coordinator = new NonceLeaseCoordinator(50, 0);
+        NonceLease lost = coordinator.lease(numericId, 500, "a");
+        Thread.sleep(100);
+
+        assertFalse(coordinator.heartbeat(lost.getId(), 100));
+        NonceLease next = coordinator.lease(numericId, 500, "b");
+        assertEquals(lost.getStartNonce(), next.getStartNonce());
+        assertEquals(1, coordinator.getLeases().size());
+    }
+
+    @Test
+    public void restartContinuesAfterLeasedRanges() throws IOException {
+        File state = Files.createTempFile("leases", ".json").toFile();
+        state.delete();
+
+        NonceLeaseCoordinator coordinator = new NonceLeaseCoordinator(60000, 0);
+        coordinator.setStateFile(state);
+        coordinator.lease(numericId, 500, "a");
+
+        NonceLeaseCoordinator restarted = new NonceLeaseCoordinator(60000, 0);
+        restarted.setStateFile(state);
+        assertEquals(500, restarted.lease(numericId, 500, "a").getStartNonce());
+
+        state.delete();
+    }
+
+    @Test
+    public void leasesStartAfterExistingPlots() throws IOException {
+        File folder = Files.createTempDirectory("leases").toFile();
+        File existing = new File(folder, numericId + "_100_5000");
+        existing.createNewFile();
+        PlotCatalog catalog = new PlotCatalog(numericId);
+        catalog.addFolder(folder);
+
+        NonceLeaseCoordinator coordinator = new NonceLeaseCoordinator(60000, 0);
+        coordinator.reserve(catalog);
+        assertEquals(5100, coordinator.lease(numericId, 500, "a").getStartNonce());
+        assertEquals(0, coordinator.lease("1234", 500, "a").getStartNonce());
+
+        existing.delete();
+        folder.delete();
+    }
+}
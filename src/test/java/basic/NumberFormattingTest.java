@@ -0,0 +1,86 @@
+/*
+ * Description: Test the fixed-point formatting of amounts
+ * License: Apache-2.0
+ */
+package basic;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import utils.NumberFormatting;
+
+public class NumberFormattingTest {
+
+    private final NumberFormatting[] presets = {
+        NumberFormatting.FULL, NumberFormatting.INT, NumberFormatting.FIAT,
+        NumberFormatting.SIGNA, NumberFormatting.SIGNA_2, NumberFormatting.TOKEN
+    };
+
+    @Test
+    public void sameAsNumberFormatOnExactValues() {
+        Random random = new Random(42);
+        long[] special = {0, 1, -1, 5, 50, 150, 250, 4999999, 5000000, 15000000, 99999999, 100000000,
+            123456789012345L, -123456789012345L, Long.MAX_VALUE, Long.MIN_VALUE + 1};
+        for (NumberFormatting preset : presets) {
+            // formats BigDecimal exactly, rounding HALF_EVEN
+            NumberFormat reference = preset.getFormat();
+            for (int i = 0; i < 20000; i++) {
+                long value = i < special.length ? special[i] : random.nextLong() >> random.nextInt(64);
+                String expected = reference.format(BigDecimal.valueOf(value, 8));
+                if (expected.matches("-0(\\.0*)?")) {
+                    // we do not write a sign on zero
+                    expected = expected.substring(1);
+                }
+                assertEquals(expected, preset.format(value), "value " + value);
+            }
+        }
+        assertEquals("-92,233,720,368.54775808", NumberFormatting.FULL.format(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void formatIntoBuffers() {
+        StringBuilder out = new StringBuilder("Total: ");
+        NumberFormatting.SIGNA.formatTo(150000000L, out).append(" SIGNA");
+        assertEquals("Total: 1.50 SIGNA", out.toString());
+
+        char[] buffer = new char[NumberFormatting.MAX_LENGTH];
+        int end = NumberFormatting.FULL.formatTo(Long.MIN_VALUE, buffer, 0);
+        assertEquals("-92,233,720,368.54775808", new String(buffer, 0, end));
+
+        // 1.5 GiB, exact on the binary fraction
+        out.setLength(0);
+        NumberFormatting.SIGNA_2.formatTo(NumberFormatting.ONE_GIB * 3 / 2, NumberFormatting.ONE_GIB, out);
+        assertEquals("1.50", out.toString());
+        out.setLength(0);
+        // 1.125 rounds to the even 1.12
+        NumberFormatting.SIGNA_2.formatTo(NumberFormatting.ONE_GIB * 9 / 8, NumberFormatting.ONE_GIB, out);
+        assertEquals("1.12", out.toString());
+    }
+
+    @Test
+    public void moreDigitsOnlyForDoubles() {
+        NumberFormatting precise = NumberFormatting.NF(2, 10);
+        assertEquals("0.0123456789", precise.format(0.0123456789));
+        assertEquals("1.50", precise.format(150000000L));
+        assertFalse(precise.isFixedPoint());
+        assertThrows(IllegalStateException.class, () -> precise.formatTo(1L, new StringBuilder()));
+    }
+
+    @Test
+    public void parseExactly() {
+        assertEquals(150000000L, NumberFormatting.parseNQT("1.5"));
+        assertEquals(-123456789012345L, NumberFormatting.parseNQT(" -1,234,567.89012345 "));
+        assertEquals(100000000000L, NumberFormatting.parseNQT("1,000"));
+        assertEquals(Long.MAX_VALUE, NumberFormatting.parseNQT(NumberFormatting.FULL.format(Long.MAX_VALUE)));
+        assertEquals(Long.MIN_VALUE, NumberFormatting.parseNQT(NumberFormatting.FULL.format(Long.MIN_VALUE)));
+        assertEquals(1L, NumberFormatting.parseNQT("0.000000010"));
+
+        assertThrows(NumberFormatException.class, () -> NumberFormatting.parseNQT("0.000000001"));
+        assertThrows(NumberFormatException.class, () -> NumberFormatting.parseNQT("92,233,720,368.54775808"));
+        assertThrows(NumberFormatException.class, () -> NumberFormatting.parseNQT("1.2.3"));
+        assertThrows(NumberFormatException.class, () -> NumberFormatting.parseNQT("-"));
+        assertThrows(NumberFormatException.class, () -> NumberFormatting.parseNQT("12a"));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Description: Test the merge of adjacent plot files
+ * License: Apache-2.0
+ */
+package basic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+import jobs.JobContext;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import plotter.PlotCatalog;
+import plotter.PlotFile;
+import plotter.PlotMerger;
+
+public class PlotMergerTest {
+
+    private final String numericId = "5505480724951664437";
+
+    private final JobContext context = new JobContext() {
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public void setProgress(long done, long total) {
+        }
+
+        @Override
+        public void onCancel(Runnable action) {
+        }
+    };
+
+    // every scoop of every nonce gets a different first byte
+    private void writePlot(File folder, long start, long nonces) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(
+                new File(folder, PlotFile.getName(numericId, start, nonces)), "rw")) {
+            raf.setLength(nonces * PlotFile.BYTES_OF_A_NONCE);
+            for (int scoop = 0; scoop < 4096; scoop++) {
+                for (long nonce = 0; nonce < nonces; nonce++) {
+                    raf.seek((scoop * nonces + nonce) * 64);
+                    raf.writeByte((int) (scoop * 7 + start + nonce));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void mergeAdjacentPlots() throws Exception {
+        File folder = Files.createTempDirectory("merger").toFile();
+        writePlot(folder, 10, 2);
+        writePlot(folder, 12, 3);
+        // not adjacent, stays alone
+        writePlot(folder, 20, 1);
+
+        PlotCatalog catalog = new PlotCatalog(numericId);
+        catalog.addFolder(folder);
+        PlotMerger merger = new PlotMerger(catalog);
+        List<List<PlotFile>> groups = merger.findGroups(folder);
+        assertEquals(1, groups.size());
+        assertEquals(2, groups.get(0).size());
+
+        PlotFile merged = merger.merge(groups.get(0), context);
+        assertEquals(10, merged.getStartNonce());
+        assertEquals(5, merged.getNonces());
+        assertTrue(merged.isComplete());
+        assertEquals(2, catalog.getPlots(folder).size());
+        assertEquals(2, folder.listFiles().length);
+
+        try (RandomAccessFile raf = new RandomAccessFile(merged.getFile(), "r")) {
+            for (int scoop = 0; scoop < 4096; scoop++) {
+                for (long nonce = 0; nonce < 5; nonce++) {
+                    raf.seek((scoop * 5 + nonce) * 64);
+                    assertEquals((byte) (scoop * 7 + 10 + nonce), raf.readByte());
+                }
+            }
+        }
+
+        for (File file : folder.listFiles()) {
+            file.delete();
+        }
+        folder.delete();
+    }
+}
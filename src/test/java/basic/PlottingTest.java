@@ -8,12 +8,17 @@ import core.Actions;
 import core.Global;
 import java.io.File;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import jobs.JobHandle;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 import plotter.Plotter;
+import utils.OSValidator;
 import static utils.NumberFormatting.ONE_GIB;
 
 /**
@@ -50,21 +55,43 @@ public class PlottingTest {
     
 
     @Test
-    @SuppressWarnings("SleepWhileInLoop")
-    public void createPlot() throws InterruptedException {
+    public void createPlot() throws Exception {
         long plotSize = ONE_GIB;
 
-        // choose a folder for plotting
-        File folderPlot = new File("plot");
+        // choose a folder for plotting, removed at the end
+        File folderPlot = Files.createTempDirectory("plot").toFile();
 
         Plotter plotter = new Plotter(numericId);
 
         logger.info("Beginning to plot");
-        plotter.startPlotting(plotSize, folderPlot);
+        JobHandle<Void> job = plotter.startPlotting(plotSize, folderPlot);
 
-//        while (plotter.isPlotting()) {
-//            Thread.sleep(1000);
-//        }
+        String plotterName = "signum-plotter" + (OSValidator.IS_WINDOWS ? ".exe" : OSValidator.IS_MAC ? ".app" : "");
+        if (getClass().getResource("/plotter/" + plotterName) == null) {
+            // no plotter for this system, nothing is started
+            assertNull(job);
+            assertFalse(plotter.isPlotting());
+        } else {
+            assertNotNull(job);
+            assertTrue(plotter.isPlotting());
+            // a second call does not start another plotter on the same file
+            assertNull(plotter.startPlotting(plotSize, folderPlot));
+            plotter.stopPlotting();
+            try {
+                job.getFuture().get(60, TimeUnit.SECONDS);
+            } catch (CancellationException ex) {
+                // stopped
+            }
+            assertFalse(plotter.isPlotting());
+        }
+
+        File[] files = folderPlot.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        folderPlot.delete();
         logger.info("Completed plot test");
     }
 }
@@ -0,0 +1,138 @@
+/*
+ * Description: Test the ordering of the plot folders and the early end of rounds
+ * License: Apache-2.0
+ */
+package basic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import miner.DriveIds;
+import miner.MinerLog;
+import miner.ScanPlanner;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScanPlannerTest {
+
+    private final String numericId = "5505480724951664437";
+
+    @Test
+    public void fastAndLargeDisksFirst() throws IOException {
+        File base = Files.createTempDirectory("planner").toFile();
+        File slow = createFolder(base, "slow", 100000);
+        File small = createFolder(base, "small", 1000);
+        File large = createFolder(base, "large", 5000);
+
+        ScanPlanner planner = new ScanPlanner();
+        planner.setDiskSpeed(slow.getAbsolutePath(), 50L << 20);
+        planner.setDiskSpeed(small.getAbsolutePath(), 200L << 20);
+        planner.setDiskSpeed(large.getAbsolutePath(), 200L << 20);
+        List<File> ordered = planner.order(Arrays.asList(slow, small, large));
+
+        assertEquals(Arrays.asList(large, small, slow), ordered);
+
+        // a disk named like the start of another folder is not that folder
+        File similar = createFolder(base, "slow0", 100);
+        assertEquals(0, planner.getSpeed(similar));
+        deleteAll(base);
+    }
+
+    @Test
+    public void stopWhenRemainingNoncesCanNotImprove() throws IOException {
+        File base = Files.createTempDirectory("planner").toFile();
+        File first = createFolder(base, "first", 1000);
+        File second = createFolder(base, "second", 1000);
+
+        ScanPlanner planner = new ScanPlanner();
+        planner.order(Arrays.asList(first, second));
+        MinerLog log = new MinerLog(Long.MAX_VALUE);
+        log.parse("new block: height=100, scoop=1");
+        log.parse("deadline accepted: account=1, nonce=2, deadline=5");
+        // base target unknown, never stop
+        assertFalse(planner.shouldStop(log));
+
+        planner.setBaseTarget(1000000);
+        // 2000 nonces left, each one beats 5 seconds with a chance of 5e6/2^64
+        assertTrue(planner.shouldStop(log));
+        log.abortRound();
+        assertFalse(log.isScanning());
+        assertFalse(planner.shouldStop(log));
+
+        // a long best deadline is worth improving
+        log.parse("new block: height=101, scoop=1");
+        log.parse("deadline accepted: account=1, nonce=2, deadline=" + Long.MAX_VALUE / 2);
+        assertFalse(planner.shouldStop(log));
+        deleteAll(base);
+    }
+
+    @Test
+    public void neverStopWhileADeadlineIsSent() throws IOException {
+        File base = Files.createTempDirectory("planner").toFile();
+        File first = createFolder(base, "first", 1000);
+
+        ScanPlanner planner = new ScanPlanner();
+        planner.order(Arrays.asList(first));
+        planner.setBaseTarget(1000000);
+        MinerLog log = new MinerLog(100000);
+        log.parse("new block: height=100, scoop=1");
+        log.parse("deadline captured: account=1, nonce=2, deadline=500");
+        log.parse("deadline accepted: account=1, nonce=2, deadline=500");
+        // a better deadline is on its way to the pool
+        log.parse("deadline captured: account=1, nonce=3, deadline=5");
+        assertEquals(1, log.getPendingSubmissions());
+        assertFalse(planner.shouldStop(log));
+        // above the target, the miner does not send it
+        log.parse("deadline captured: account=1, nonce=4, deadline=500000");
+        assertEquals(1, log.getPendingSubmissions());
+
+        log.parse("deadline accepted: account=1, nonce=3, deadline=5");
+        assertEquals(0, log.getPendingSubmissions());
+        assertTrue(planner.shouldStop(log));
+        deleteAll(base);
+    }
+
+    @Test
+    public void driveStatisticsOfTheMiner() throws IOException {
+        File base = Files.createTempDirectory("planner").toFile();
+        File first = createFolder(base, "first", 1000);
+        File second = createFolder(base, "second", 1000);
+        // both folders are on the same device
+        String drive = DriveIds.of(first);
+        assertEquals(drive, DriveIds.of(second));
+        assertTrue(DriveIds.matches(drive, first));
+
+        ScanPlanner planner = new ScanPlanner();
+        planner.order(Arrays.asList(first, second));
+        MinerLog log = new MinerLog(Long.MAX_VALUE);
+        log.parse("new block: height=100, scoop=1");
+        assertEquals(2000, planner.getRemainingNonces(log.getDisksScanned()));
+
+        // as printed by the miner with show_drive_stats, padded to 80 chars
+        log.parse(String.format("[INFO]     %-80s", "drive " + drive + " finished, speed=120 MiB/s"));
+        assertEquals(120L << 20, (long) log.getDiskSpeeds().get(drive));
+        assertEquals(0, planner.getRemainingNonces(log.getDisksScanned()));
+        assertFalse(planner.shouldStop(log));
+        assertEquals(120L << 20, planner.getSpeed(second));
+        deleteAll(base);
+    }
+
+    private File createFolder(File base, String name, long nonces) throws IOException {
+        File folder = new File(base, name);
+        folder.mkdirs();
+        new File(folder, numericId + "_0_" + nonces).createNewFile();
+        return folder;
+    }
+
+    private void deleteAll(File base) {
+        for (File folder : base.listFiles()) {
+            for (File file : folder.listFiles()) {
+                file.delete();
+            }
+            folder.delete();
+        }
+        base.delete();
+    }
+}